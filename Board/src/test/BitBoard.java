@@ -0,0 +1,138 @@
+package test;
+
+/**
+ * The BitBoard class represents a set of squares of the Scrabble board as bits, one bit per square.
+ * Each row takes a 16-bit lane of a long, four rows per long, with the column as the bit within the lane, so a whole
+ * row or a whole column is read with one shift and mask. The same squares are also kept transposed, column by column,
+ * so vertical lines are as cheap as horizontal ones. The sixteenth bit of each lane and the sixteenth lane stay clear.
+ */
+public class BitBoard {
+    private static final int SIZE = Board.SIZE; // Squares per row and per column
+    private static final int LINE = (1 << SIZE) - 1; // Mask of the squares of one row or column
+    private static final long LANES = 0x7FFF7FFF7FFF7FFFL; // Mask of the squares of four rows in a long
+
+    private final long[] rows = new long[4]; // Squares by row: bit (row % 4) * 16 + col of rows[row / 4]
+    private final long[] cols = new long[4]; // Transposed squares: bit (col % 4) * 16 + row of cols[col / 4]
+
+    /**
+     * Constructor to create an empty BitBoard.
+     */
+    public BitBoard()
+    {
+    }
+
+    /**
+     * Constructor to create a copy of a BitBoard.
+     *
+     * @param other The BitBoard to copy.
+     */
+    public BitBoard(BitBoard other)
+    {
+        System.arraycopy(other.rows, 0, rows, 0, rows.length);
+        System.arraycopy(other.cols, 0, cols, 0, cols.length);
+    }
+
+    /**
+     * Adds a square to the set.
+     *
+     * @param row The row of the square.
+     * @param col The column of the square.
+     */
+    void set(int row, int col)
+    {
+        rows[row >> 2] |= 1L << ((row & 3) << 4 | col);
+        cols[col >> 2] |= 1L << ((col & 3) << 4 | row);
+    }
+
+    /**
+     * Checks if a square is in the set.
+     *
+     * @param row The row of the square.
+     * @param col The column of the square.
+     * @return true if the square is on the board and in the set, false otherwise.
+     */
+    public boolean isSet(int row, int col)
+    {
+        return col >= 0 && col < SIZE && (row(row) >>> col & 1) != 0;
+    }
+
+    /**
+     * Gets the squares of a row in the set.
+     *
+     * @param row The row.
+     * @return A mask with bit col set for each square of the row in the set, 0 if the row is off the board.
+     */
+    public int row(int row)
+    {
+        return row >= 0 && row < SIZE ? (int) (rows[row >> 2] >>> ((row & 3) << 4)) & LINE : 0;
+    }
+
+    /**
+     * Gets the squares of a column in the set.
+     *
+     * @param col The column.
+     * @return A mask with bit row set for each square of the column in the set, 0 if the column is off the board.
+     */
+    public int column(int col)
+    {
+        return col >= 0 && col < SIZE ? (int) (cols[col >> 2] >>> ((col & 3) << 4)) & LINE : 0;
+    }
+
+    /**
+     * Gets the anchor squares: the empty squares next to a square in the set, where a new word must touch the board.
+     * When the set is empty, the only anchor is the center square.
+     *
+     * @return The anchor squares.
+     */
+    public BitBoard anchors()
+    {
+        BitBoard anchors = new BitBoard();
+        if (isEmpty())
+        {
+            anchors.set(SIZE / 2, SIZE / 2);
+            return anchors;
+        }
+        for (int i = 0; i < rows.length; i++)
+        {
+            long above = i > 0 ? rows[i - 1] >>> 48 : 0; // Last row of the previous long
+            long below = i + 1 < rows.length ? rows[i + 1] << 48 : 0; // First row of the next long
+            long neighbors = rows[i] << 1 | rows[i] >>> 1 | rows[i] << 16 | above | rows[i] >>> 16 | below;
+            anchors.rows[i] = neighbors & ~rows[i] & LANES;
+        }
+        anchors.rows[3] &= 0xFFFFFFFFFFFFL; // Row 15 is off the board
+        for (int row = 0; row < SIZE; row++)
+        {
+            for (int bits = anchors.row(row); bits != 0; bits &= bits - 1)
+            {
+                int col = Integer.numberOfTrailingZeros(bits);
+                anchors.cols[col >> 2] |= 1L << ((col & 3) << 4 | row);
+            }
+        }
+        return anchors;
+    }
+
+    /**
+     * Counts the squares in the set.
+     *
+     * @return The number of squares.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (long r : rows)
+        {
+            size += Long.bitCount(r);
+        }
+        return size;
+    }
+
+    /**
+     * Checks if the set is empty.
+     *
+     * @return true if no square is in the set, false otherwise.
+     */
+    public boolean isEmpty()
+    {
+        return (rows[0] | rows[1] | rows[2] | rows[3]) == 0;
+    }
+}
@@ -16,7 +16,9 @@ public class Board {
 
     // Board attributes
     Tile[][] myBoard; // 2D array representing the board tiles
+    private final BitBoard occupied; // Squares of myBoard that hold a tile, kept in step with it
     private ArrayList<Word> allWordsOnBoard; // List of all words placed on the board
+    private final WordBuffer newWords = new WordBuffer(); // Words formed by the move being placed, reused for every move
     private boolean boardIsEmpty; // Flag to check if the board is empty
 
 
@@ -43,6 +45,7 @@ public class Board {
     public Board() 
     {
         this.myBoard =new Tile[SIZE][SIZE];
+        this.occupied = new BitBoard();
         this.boardIsEmpty = true;
         this.allWordsOnBoard = new ArrayList<Word>();
     }
@@ -67,7 +70,20 @@ public class Board {
      */
     public Tile[][] getTiles()
     {
-        return this.myBoard.clone();
+        Tile[][] tiles = new Tile[SIZE][];
+        for(int i=0;i<SIZE;i++)
+            tiles[i] = this.myBoard[i].clone();
+        return tiles;
+    }
+
+    /**
+     * Gets a copy of the squares that hold a tile.
+     *
+     * @return The occupied squares
+     */
+    public BitBoard getOccupancy()
+    {
+        return new BitBoard(this.occupied);
     }
 
     /**
@@ -113,6 +129,8 @@ public class Board {
 
     /**
      * Checks if the word has adjacent tiles or overlaps existing tiles on the board.
+     * The letters are looked at in order, and the first one that overlaps a tile (a null tile of the word on an
+     * occupied square) or lies next to a tile decides; an overlapping letter takes the tile from the board.
      *
      * @param word The word to be checked
      * @return true if it has adjacent or overlapping tiles, false otherwise
@@ -124,29 +142,25 @@ public class Board {
         boolean vertical= word.isVertical();
         int row=word.getRow();
         int col=word.getCol();
-        for (int i = 0; i < length; i++) 
+        int start = vertical ? row : col; // Position of the first letter along its line
+        // Bit i stands for letter i of the word
+        int line = (vertical ? occupied.column(col) : occupied.row(row)) >>> start;
+        int sides = (vertical ? occupied.column(col - 1) | occupied.column(col + 1)
+                              : occupied.row(row - 1) | occupied.row(row + 1)) >>> start;
+        int blanks = 0;
+        for (int i = 0; i < length; i++)
         {
-            int currentRow = vertical ? row + i : row;
-            int currentCol = vertical ? col : col + i;
-            // overlap
-            if(tiles[i] == null && myBoard[currentRow][currentCol] != null) 
-            {
-                tiles[i] = myBoard[currentRow][currentCol];
-                return true;
-            }
-            else 
-            {
-                if (vertical) 
-                {
-                    if (isAdjacent(currentRow, currentCol + 1) || isAdjacent(currentRow, currentCol - 1)) return true; // any tile
-                }
-                else 
-                {
-                    if (isAdjacent(currentRow + 1, currentCol) || isAdjacent(currentRow - 1, currentCol)) return true; // any tile
-                }
-            }
-        } 
-        return false;  
+            if (tiles[i] == null) blanks |= 1 << i;
+        }
+        int overlaps = blanks & line; // overlap
+        int touching = (overlaps | sides) & ((1 << length) - 1); // any tile
+        if (touching == 0) return false;
+        int first = Integer.numberOfTrailingZeros(touching);
+        if ((overlaps >>> first & 1) != 0)
+        {
+            tiles[first] = vertical ? myBoard[row + first][col] : myBoard[row][col + first];
+        }
+        return true;
     }
 
     /**
@@ -158,9 +172,7 @@ public class Board {
      */
     public boolean isAdjacent(int row, int col) 
     {
-        if(row >= 0 && row < SIZE && col >=0 && col < SIZE) 
-            if (myBoard[row][col] != null) return true;
-        return false;
+        return occupied.isSet(row, col);
     }
 
     /**
@@ -198,33 +210,48 @@ public class Board {
      */
     public ArrayList<Word> getWords(Word word)
     {
-        if(!dictionaryLegal(word)) return null;
-        if(!boardLegal(word)) return null;
-        ArrayList<Word> newWords = new ArrayList<Word>();
-        Tile[][] tmpBoard=this.getTiles();
+        if(!getWords(word, this.newWords)) return null;
+        ArrayList<Word> words = new ArrayList<Word>(newWords.size());
+        for(int i=0;i<newWords.size();i++)
+            words.add(newWords.detach(i));
+        return words;
+    }
+
+    /**
+     * Gets all valid words formed by placing the given word on the board, without allocating and without
+     * changing the board. The placed word comes first, followed by the cross words as views of the buffer.
+     *
+     * @param word  The word to be placed
+     * @param words The buffer that receives the words formed, emptied first
+     * @return true if the placement is legal, false otherwise (the buffer is then left empty)
+     */
+    public boolean getWords(Word word, WordBuffer words)
+    {
+        words.clear();
+        if(!dictionaryLegal(word)) return false;
+        if(!boardLegal(word)) return false;
         int row=word.getRow();
         int col=word.getCol();
         int length=word.getWordLength();
         boolean vertical=word.isVertical();
 
-        newWords.add(word);
-        addNewWordToBoard(word, tmpBoard);
+        words.add(word);
         for(int i=0;i<length;i++)
         {
             if(vertical)
             {
-                Word w = (checkLeft(row+i, col,tmpBoard));
+                Word w = (checkLeft(row+i, col, word, words));
                 if(w!=null && dictionaryLegal(w))
-                    newWords.add(w);
+                    words.add(w);
             }
             else
             {
-                Word w = (checkTop(row, col+i,tmpBoard));
+                Word w = (checkTop(row, col+i, word, words));
                 if(w!=null && dictionaryLegal(w))
-                    newWords.add(w);
+                    words.add(w);
             }    
         }
-        return newWords;
+        return true;
     }
 
     /**
@@ -232,68 +259,74 @@ public class Board {
      *
      * @param currentRow The starting row
      * @param currentCol The starting column
-     * @param board      The current state of the board
+     * @param word       The word being placed, seen on top of the board
+     * @param words      The buffer whose next view receives the formed word
      * @return The formed word, or null if no valid word is formed
      */
-    private Word checkTop(int currentRow,int currentCol,Tile[][] board)
+    private Word checkTop(int currentRow,int currentCol,Word word,WordBuffer words)
     {
-        ArrayList<Tile> tiles = new ArrayList<Tile>();
-        if(currentRow>0){
-            while(currentRow-1 >= 0 && board[currentRow-1][currentCol]!=null)
-            {
-                currentRow--;
-            }
-        }
-        int start=currentRow;
-        while(currentRow <= 14 && board[currentRow][currentCol]!=null)
-        {
-            tiles.add(board[currentRow][currentCol]);
-            currentRow++;
-        }
-        Tile[] tilesArray = tiles.toArray(new Tile[tiles.size()]);
-        Word w=new Word(tilesArray,start,currentCol,true);
-        if(w.getWordLength() == 1) return null;
-        for(Word w1:this.allWordsOnBoard)
-        {
-            if(w1.equals(w)) return null;
-
-        }
-        return w;
+        int line = occupied.column(currentCol) | 1 << currentRow; // The column with the new tile on it
+        int start = 32 - Integer.numberOfLeadingZeros(~line & ((1 << currentRow) - 1)); // Below the nearest gap above
+        int end = currentRow + Integer.numberOfTrailingZeros(~(line >>> currentRow));
+        if(end - start == 1) return null;
+        Word w=words.next(start,currentCol,true,end - start);
+        Tile[] tilesArray = w.getTiles();
+        for(int i=start;i<end;i++)
+            tilesArray[i-start] = tileAt(word, i, currentCol);
+        return isOnBoard(w) ? null : w;
     }
     /**
      * Checks for horizontal words formed to the left of the placed word.
      *
      * @param currentRow The starting row
      * @param currentCol The starting column
-     * @param board      The current state of the board
+     * @param word       The word being placed, seen on top of the board
+     * @param words      The buffer whose next view receives the formed word
      * @return The formed word, or null if no valid word is formed
      */
-    private Word checkLeft(int currentRow,int currentCol,Tile[][] board)
+    private Word checkLeft(int currentRow,int currentCol,Word word,WordBuffer words)
     {
-        ArrayList<Tile> tiles = new ArrayList<Tile>();
-        if(currentCol>0)
-        {
-            while(currentCol-1 >= 0 && board[currentRow][currentCol-1]!=null)
-            {
-                currentCol--;
-            }
-        }
-        int start=currentCol;
-        while(currentCol <= 14 && board[currentRow][currentCol]!=null)
+        int line = occupied.row(currentRow) | 1 << currentCol; // The row with the new tile on it
+        int start = 32 - Integer.numberOfLeadingZeros(~line & ((1 << currentCol) - 1)); // Right of the nearest gap
+        int end = currentCol + Integer.numberOfTrailingZeros(~(line >>> currentCol));
+        if(end - start == 1) return null;
+        Word w=words.next(currentRow,start,false,end - start);
+        Tile[] tilesArray = w.getTiles();
+        for(int i=start;i<end;i++)
+            tilesArray[i-start] = tileAt(word, currentRow, i);
+        return isOnBoard(w) ? null : w;
+    }
+
+    /**
+     * Checks if a word has already been placed or formed on the board.
+     *
+     * @param word The word to be checked
+     * @return true if an equal word is on the board, false otherwise
+     */
+    private boolean isOnBoard(Word word)
+    {
+        for(int i=0;i<allWordsOnBoard.size();i++)
         {
-            tiles.add(board[currentRow][currentCol]);
-            currentCol++;
+            if(allWordsOnBoard.get(i).equals(word)) return true;
         }
-        Tile[] tilesArray = tiles.toArray(new Tile[tiles.size()]);
-        Word w=new Word(tilesArray,currentRow,start,false);
-        if(w.getWordLength() == 1) return null;
-        for(Word w1:this.allWordsOnBoard)
-        {
-            if(w1.equals(w)) return null;
+        return false;
+    }
 
-        }
-        return w;
-        
+    /**
+     * Gets the tile at a board position as it would be with the word placed.
+     *
+     * @param word The word being placed
+     * @param row  The row position
+     * @param col  The column position
+     * @return The tile of the word at that position, or else the tile on the board
+     */
+    private Tile tileAt(Word word, int row, int col)
+    {
+        int i = word.isVertical() ? row - word.getRow() : col - word.getCol();
+        boolean onWord = word.isVertical() ? col == word.getCol() : row == word.getRow();
+        if(onWord && i >= 0 && i < word.getWordLength() && word.getTiles()[i] != null)
+            return word.getTiles()[i];
+        return myBoard[row][col];
     }
 
     /**
@@ -359,40 +392,44 @@ public class Board {
 
     /**
      * Tries to place a word on the board and returns the score if successful.
+     * The move is evaluated without allocating; an illegal move leaves the board as it was.
      *
      * @param word The word to be placed
      * @return The score of the placed word, or 0 if the placement is illegal
      */
     public int tryPlaceWord(Word word) 
     {
-        ArrayList<Word> newWords = getWords(word);
-        if(newWords==null) return 0;
-        int score = cumulativeScore(newWords);
+        if(!getWords(word, this.newWords)) return 0;
+        int score = 0;
+        for(int i=0;i<newWords.size();i++)
+            score += getScore(newWords.get(i));
         this.boardIsEmpty = false;
-        addNewWordToBoard(word,this.myBoard);
-        allWordsOnBoard.addAll(newWords);
+        addNewWordToBoard(word);
+        for(int i=0;i<newWords.size();i++)
+            allWordsOnBoard.add(newWords.detach(i));
         return score;
     }
 
     /**
-     * Adds a new word to the board.
+     * Adds a new word to the board, keeping the tiles already on the board where the word has none.
      *
-     * @param word  The word to be added
-     * @param board The current state of the board
+     * @param word The word to be added
      */
-    private void addNewWordToBoard(Word word,Tile[][] board)
+    private void addNewWordToBoard(Word word)
     {
         int currentRow=word.getRow();
         int currentCol=word.getCol();
         Tile[] tiles=word.getTiles();
         for(int i=0;i<word.getWordLength();i++)
         {
+            if(tiles[i]==null) continue;
             if(word.isVertical()){
-                board[currentRow+i][currentCol]=tiles[i];
+                myBoard[currentRow+i][currentCol]=tiles[i];
+                occupied.set(currentRow+i, currentCol);
             }
             else{
-                board[currentRow][currentCol+i]=tiles[i];
-
+                myBoard[currentRow][currentCol+i]=tiles[i];
+                occupied.set(currentRow, currentCol+i);
             }
             
         }
@@ -1,5 +1,7 @@
 package test;
 
+import java.util.ArrayList;
+
 import test.Tile.Bag;
 
 public class MainTrain {
@@ -113,9 +115,172 @@ public class MainTrain {
 
 	}
 
+	// A word whose tiles go back to the bag right away, so that a test leaves the bag as it found it
+	private static Word word(String s, int row, int col, boolean vertical) {
+		Tile[] ts=get(s);
+		for(Tile t : ts)
+			if(t!=null)
+				Bag.getBag().put(t);
+		return new Word(ts, row, col, vertical);
+	}
+
+	// The squares of a grid with a tile, as a BitBoard should hold them
+	private static boolean[][] squares(Tile[][] tiles) {
+		boolean[][] squares=new boolean[Board.SIZE][Board.SIZE];
+		for(int r=0;r<Board.SIZE;r++)
+			for(int c=0;c<Board.SIZE;c++)
+				squares[r][c]=tiles[r][c]!=null;
+		return squares;
+	}
+
+	// Checks a BitBoard square by square against the squares it should hold, and its anchors against the
+	// empty squares next to them
+	private static boolean sameSquares(BitBoard bits, boolean[][] squares) {
+		int size=0;
+		boolean any=false;
+		for(int r=0;r<Board.SIZE;r++)
+			for(int c=0;c<Board.SIZE;c++) {
+				if(squares[r][c]) { size++; any=true; }
+				if(bits.isSet(r,c)!=squares[r][c] || ((bits.row(r)>>>c)&1)==1!=squares[r][c] || ((bits.column(c)>>>r)&1)==1!=squares[r][c])
+					return false;
+			}
+		if(bits.size()!=size || bits.isEmpty()==any)
+			return false;
+		if(bits.row(-1)!=0 || bits.row(Board.SIZE)!=0 || bits.column(-1)!=0 || bits.column(Board.SIZE)!=0)
+			return false;
+		if(bits.isSet(0,-1) || bits.isSet(0,Board.SIZE) || bits.isSet(-1,0) || bits.isSet(Board.SIZE,0))
+			return false;
+
+		BitBoard anchors=bits.anchors();
+		int anchorCount=0;
+		for(int r=0;r<Board.SIZE;r++)
+			for(int c=0;c<Board.SIZE;c++) {
+				boolean anchor= any ? !squares[r][c] && (r>0 && squares[r-1][c] || r<Board.SIZE-1 && squares[r+1][c]
+						|| c>0 && squares[r][c-1] || c<Board.SIZE-1 && squares[r][c+1]) : r==Board.SIZE/2 && c==Board.SIZE/2;
+				if(anchors.isSet(r,c)!=anchor || ((anchors.column(c)>>>r)&1)==1!=anchor)
+					return false;
+				if(anchor)
+					anchorCount++;
+			}
+		return anchors.size()==anchorCount;
+	}
+
+	public static void testBitBoard() {
+		Board b=new Board();
+		if(!sameSquares(b.getOccupancy(), squares(b.getTiles())))
+			System.out.println("the occupancy of an empty board is wrong");
+
+		// Words reaching row 0 and column 0; the rules keep words off row 14 and column 14
+		Word[] words= {word("EAIONRTL", 0, 7, true), word("SUDGEAI_", 0, 0, false), word("_ON", 0, 0, true),
+				word("E_A", 6, 6, false)};
+		for(Word w : words) {
+			if(b.tryPlaceWord(w)==0)
+				System.out.println("could not place "+w.getTiles().length+" letters at "+w.getRow()+","+w.getCol());
+			if(!sameSquares(b.getOccupancy(), squares(b.getTiles())))
+				System.out.println("the occupancy does not match the board tiles");
+		}
+		BitBoard copy=b.getOccupancy();
+		copy.set(14,14);
+		if(b.getOccupancy().isSet(14,14))
+			System.out.println("getOccupancy did not return a copy");
+
+		// Squares on every edge and corner, set directly
+		boolean[][] squares=new boolean[Board.SIZE][Board.SIZE];
+		BitBoard bits=new BitBoard();
+		int[][] edges= {{0,0},{0,14},{14,0},{14,14},{14,7},{7,14},{13,13},{0,5},{3,0},{4,0},{7,7},{8,7},{12,3},{11,10}};
+		for(int[] e : edges) {
+			squares[e[0]][e[1]]=true;
+			bits.set(e[0],e[1]);
+			if(!sameSquares(bits, squares))
+				System.out.println("BitBoard is wrong after setting "+e[0]+","+e[1]);
+		}
+		for(int c=0;c<Board.SIZE;c++) {
+			squares[14][c]=true;
+			bits.set(14,c);
+		}
+		if(!sameSquares(bits, squares) || bits.row(14)!=(1<<Board.SIZE)-1)
+			System.out.println("BitBoard is wrong with row 14 full");
+		if(!sameSquares(new BitBoard(bits), squares))
+			System.out.println("the BitBoard copy is wrong");
+	}
+
+	private static boolean sameTiles(Tile[][] a, Tile[][] b) {
+		for(int r=0;r<Board.SIZE;r++)
+			for(int c=0;c<Board.SIZE;c++)
+				if(a[r][c]!=b[r][c])
+					return false;
+		return true;
+	}
+
+	public static void testWordBuffer() {
+		Board b=new Board();
+		Word rear=word("REAR", 7, 7, false);
+		if(b.tryPlaceWord(rear)==0)
+			System.out.println("could not place the first word");
+
+		// ONE under REAR forms three cross words: RO, EN and AE
+		Word one=word("ONE", 8, 7, false);
+		WordBuffer buffer=new WordBuffer();
+		ArrayList<Word> list=b.getWords(one);
+		if(!b.getWords(one, buffer) || list==null || list.size()!=4 || buffer.size()!=list.size()) {
+			System.out.println("getWords into a WordBuffer found other words than getWords");
+			return;
+		}
+		for(int i=0;i<list.size();i++)
+			if(!buffer.get(i).equals(list.get(i)))
+				System.out.println("word "+i+" of the WordBuffer differs from getWords");
+		if(buffer.get(0)!=one || buffer.detach(0)!=one)
+			System.out.println("the placed word should be in the WordBuffer itself");
+		Word view=buffer.get(1);
+		Word kept=buffer.detach(1);
+		if(kept==view || !kept.equals(view))
+			System.out.println("detach should return a copy of a view");
+
+		// IS above REAR forms two cross words, written into the same views
+		Word is=word("IS", 6, 7, false);
+		if(!b.getWords(is, buffer) || buffer.size()!=3)
+			System.out.println("getWords into a reused WordBuffer is wrong");
+		else if(buffer.get(1)!=view)
+			System.out.println("the WordBuffer should reuse its views");
+		if(!kept.equals(list.get(1)) || kept.equals(buffer.get(1)))
+			System.out.println("a detached word changed when the WordBuffer was filled again");
+		try {
+			buffer.get(buffer.size());
+			System.out.println("WordBuffer.get should reject an index past the words");
+		} catch(IndexOutOfBoundsException e) {}
+
+		// Rejected moves leave the board and its words as they were
+		Word apart=word("NI", 0, 0, false);
+		if(b.getWords(apart, buffer) || buffer.size()!=0)
+			System.out.println("getWords should leave the WordBuffer empty for an illegal word");
+		Word at=word("AT", 9, 7, false);
+		Word[] rejected= {apart, at, word("SI", -1, 7, true), word("_INDSOME", 7, 10, true)};
+		Tile[][] before=b.getTiles();
+		for(Word w : rejected) {
+			if(b.tryPlaceWord(w)!=0)
+				System.out.println("an illegal move was placed");
+			if(!sameTiles(before, b.getTiles()))
+				System.out.println("a rejected move changed the board");
+		}
+		// The same moves on a board that never saw the rejected ones: _NT forms AT at 9,7, scored only if the
+		// rejected AT was not recorded as a word on the board
+		Board same=new Board();
+		Word rear2=word("REAR", 7, 7, false);
+		same.tryPlaceWord(rear2);
+		Word[] moves= {word("_OA", 7, 7, true), word("_NT", 7, 8, true)};
+		Word[] sameMoves= {word("_OA", 7, 7, true), word("_NT", 7, 8, true)};
+		for(int i=0;i<moves.length;i++) {
+			int score=b.tryPlaceWord(moves[i]);
+			if(score==0 || score!=same.tryPlaceWord(sameMoves[i]) || !sameTiles(b.getTiles(), same.getTiles()))
+				System.out.println("a rejected move changed the words on the board");
+		}
+	}
+
 	public static void main(String[] args) {
 		testBag(); // 30 points
 		testBoard(); // 70 points
+		testBitBoard();
+		testWordBuffer();
 		System.out.println("done");				
 	}
 
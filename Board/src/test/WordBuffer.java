@@ -0,0 +1,111 @@
+package test;
+
+/**
+ * The WordBuffer class holds the words formed by one move, for Board.getWords to fill without allocating.
+ * Cross words are written into views: Word objects owned by the buffer, whose tiles come from arrays allocated
+ * the first time a word of their length is found, and reused from then on. A view is only valid until the buffer is
+ * filled again; use detach to keep a word.
+ * A buffer can be reused for any number of moves, but by one thread at a time.
+ */
+public class WordBuffer {
+    private static final int CAPACITY = Board.SIZE + 1; // The placed word and at most one cross word per letter
+
+    private final Word[] views = new Word[CAPACITY]; // Word objects reused for the words found
+    private final Tile[][][] tiles = new Tile[CAPACITY][][]; // Tiles of each view by word length, null until used
+    private final Word[] words = new Word[CAPACITY]; // The words in the buffer, views or words added from outside
+    private int size; // Number of words in the buffer
+
+    /**
+     * Constructor to create an empty WordBuffer.
+     */
+    public WordBuffer()
+    {
+    }
+
+    /**
+     * Empties the buffer.
+     */
+    void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Gets the view in which the next word can be written. It becomes part of the buffer only once added.
+     *
+     * @param row      The starting row position of the word.
+     * @param col      The starting column position of the word.
+     * @param vertical True if the word is vertical, false if horizontal.
+     * @param length   The number of tiles of the word.
+     * @return The view, with a tile array of the given length to fill in.
+     */
+    Word next(int row, int col, boolean vertical, int length)
+    {
+        if (views[size] == null)
+        {
+            views[size] = new Word(null, 0, 0, false);
+            tiles[size] = new Tile[Board.SIZE + 1][];
+        }
+        if (tiles[size][length] == null)
+        {
+            tiles[size][length] = new Tile[length];
+        }
+        Word view = views[size];
+        view.tiles = tiles[size][length];
+        view.row = row;
+        view.col = col;
+        view.vertical = vertical;
+        return view;
+    }
+
+    /**
+     * Adds a word to the buffer, either the view returned by next or a word of the caller.
+     *
+     * @param word The word to add.
+     */
+    void add(Word word)
+    {
+        words[size++] = word;
+    }
+
+    /**
+     * Gets the number of words in the buffer.
+     *
+     * @return The number of words.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Gets a word of the buffer.
+     *
+     * @param i The index of the word, from 0 to size() - 1.
+     * @return The word, which may be a view.
+     */
+    public Word get(int i)
+    {
+        if (i < 0 || i >= size)
+        {
+            throw new IndexOutOfBoundsException("word " + i + " of " + size);
+        }
+        return words[i];
+    }
+
+    /**
+     * Gets a word of the buffer that stays valid after the buffer is filled again.
+     *
+     * @param i The index of the word, from 0 to size() - 1.
+     * @return The word itself if it was added from outside, or a copy of the view.
+     */
+    public Word detach(int i)
+    {
+        Word word = get(i);
+        if (word != views[i])
+        {
+            return word;
+        }
+        return new Word(word.getTiles().clone(), word.getRow(), word.getCol(), word.isVertical());
+    }
+}
@@ -1,34 +1,158 @@
 package test;
 
 
-import java.math.BigInteger;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.List;
 
 /**
  * The BloomFilter class implements a space-efficient probabilistic data structure.
  * It is used to test whether an element is a member of a set with a possibility of false positives.
+ * Bit indexes are derived from one 64-bit hash per word by enhanced double hashing of its two 32-bit halves,
+ * unless the filter was created from MessageDigest algorithm names, in which case each algorithm sets one bit.
+ * The bits are kept in 64-bit words, either in a heap array or, for large filters, off-heap in a direct buffer
+ * that the garbage collector never has to scan or copy. Off-heap memory is released when the filter is collected.
+ * Words are added by one thread at a time, except with addHashConcurrently, which sets each 64-bit word atomically.
  */
 public class BloomFilter 
 {
-    private int size; // Size of the BitSet
-    private BitSet bits; // BitSet to store the hashed values 
-    private List<MessageDigest> hashFuncs; // List of hash functions to use
+    private static final VarHandle HEAP_WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle DIRECT_WORDS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private int size; // Number of bits in the filter
+    private LongBuffer bits; // The bits of the filter, 64 per word, on the heap or off-heap
+    private ByteBuffer direct; // The off-heap memory allocated for bits, null if the bits are on the heap or given
+    private List<MessageDigest> hashFuncs; // List of hash functions to use, empty unless in compatibility mode
+    private HashStrategy hashStrategy; // Strategy producing the single hash per word, null in compatibility mode
+    private int numHashFunctions; // Number of bits set per word
+
+    /**
+     * Constructor to create a BloomFilter that derives its bit indexes from a single hash per word.
+     * The bits are kept on the heap.
+     *
+     * @param size             The number of bits in the filter.
+     * @param numHashFunctions The number of bits to set per word.
+     * @param hashStrategy     The strategy used to hash each word.
+     */
+    public BloomFilter(int size, int numHashFunctions, HashStrategy hashStrategy)
+    {
+        this(size, numHashFunctions, hashStrategy, false);
+    }
+
+    /**
+     * Constructor to create a BloomFilter that derives its bit indexes from a single hash per word.
+     *
+     * @param size             The number of bits in the filter.
+     * @param numHashFunctions The number of bits to set per word.
+     * @param hashStrategy     The strategy used to hash each word.
+     * @param offHeap          True to keep the bits in off-heap memory, false to keep them on the heap.
+     */
+    public BloomFilter(int size, int numHashFunctions, HashStrategy hashStrategy, boolean offHeap)
+    {
+        if (size <= 0 || numHashFunctions <= 0)
+        {
+            throw new IllegalArgumentException("size and number of hash functions must be positive");
+        }
+        this.size = size;
+        this.bits = allocate(size, offHeap);
+        this.hashFuncs = new ArrayList<>();
+        this.hashStrategy = hashStrategy;
+        this.numHashFunctions = numHashFunctions;
+    }
+
+    /**
+     * Constructor to create a BloomFilter over existing bits, such as the bits of a memory-mapped snapshot.
+     * The filter is read-only if the buffer is.
+     *
+     * @param size             The number of bits in the filter.
+     * @param numHashFunctions The number of bits to set per word.
+     * @param hashStrategy     The strategy used to hash each word.
+     * @param bits             The bits, 64 per word, at least size bits of them.
+     */
+    BloomFilter(int size, int numHashFunctions, HashStrategy hashStrategy, LongBuffer bits)
+    {
+        if (size <= 0 || numHashFunctions <= 0 || bits.limit() < (size + 63) >>> 6)
+        {
+            throw new IllegalArgumentException("size and number of hash functions must be positive and fit the bits");
+        }
+        this.size = size;
+        this.bits = bits;
+        this.hashFuncs = new ArrayList<>();
+        this.hashStrategy = hashStrategy;
+        this.numHashFunctions = numHashFunctions;
+    }
+
+    /**
+     * Creates a BloomFilter sized for the expected number of words and the target false positive probability.
+     * Uses the optimal bit count m = -n ln(p) / (ln 2)^2 and number of hash functions k = (m / n) ln 2.
+     *
+     * @param expectedInsertions The number of words expected to be added.
+     * @param fpp                The target false positive probability, between 0 and 1 exclusive.
+     * @return A BloomFilter using the Murmur3 hash strategy, with its bits on the heap.
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp)
+    {
+        return create(expectedInsertions, fpp, false);
+    }
+
+    /**
+     * Creates a BloomFilter sized for the expected number of words and the target false positive probability.
+     *
+     * @param expectedInsertions The number of words expected to be added.
+     * @param fpp                The target false positive probability, between 0 and 1 exclusive.
+     * @param offHeap            True to keep the bits in off-heap memory, false to keep them on the heap.
+     * @return A BloomFilter using the Murmur3 hash strategy.
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp, boolean offHeap)
+    {
+        if (fpp <= 0 || fpp >= 1)
+        {
+            throw new IllegalArgumentException("false positive probability must be between 0 and 1: " + fpp);
+        }
+        long n = Math.max(1, expectedInsertions);
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (ln2 * ln2));
+        int size = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 64));
+        int numHashFunctions = Math.max(1, (int) Math.round((double) size / n * ln2));
+        return new BloomFilter(size, numHashFunctions, new Murmur3(), offHeap);
+    }
+
+    /**
+     * Allocates zeroed storage for a number of bits, keeping the off-heap memory in direct for atomic updates.
+     */
+    private LongBuffer allocate(int size, boolean offHeap)
+    {
+        int words = (size + 63) >>> 6;
+        if (offHeap)
+        {
+            direct = ByteBuffer.allocateDirect(words * 8).order(ByteOrder.nativeOrder());
+            return direct.asLongBuffer();
+        }
+        return LongBuffer.allocate(words);
+    }
 
     /**
      * Constructor to create a BloomFilter with the specified size and hash functions.
+     * Kept for compatibility: every word is run through each MessageDigest, which is much slower than a HashStrategy.
      *
-     * @param size The size of the BitSet.
+     * @param size The number of bits in the filter.
      * @param algs The names of the hash algorithms to use.
      */
     public BloomFilter(int size,String...algs) 
     {
         this.size = size;
-        this.bits = new BitSet(size);
-        this.hashFuncs = new ArrayList();
+        this.bits = allocate(size, false);
+        this.hashFuncs = new ArrayList<>();
+        this.numHashFunctions = algs.length;
         for(String alg : algs)
         {
             try{
@@ -47,11 +171,52 @@ public class BloomFilter
      */
     public void add(String word)
     {
-        for(MessageDigest hashFunc : hashFuncs)
+        if (hashStrategy == null)
         {
-            byte[] bts = hashFunc.digest(word.getBytes());
-            int inndex = (Math.abs(new BigInteger(bts).intValue())) % size;
-            bits.set(inndex);
+            byte[] wordBytes = word.getBytes(StandardCharsets.UTF_8);
+            for(MessageDigest hashFunc : hashFuncs)
+            {
+                setBit(digestIndex(hashFunc, wordBytes));
+            }
+            return;
+        }
+        addHash(hashStrategy.hash(word));
+    }
+
+    /**
+     * Adds a word that was already hashed with this filter's HashStrategy.
+     *
+     * @param hash The hash of the word.
+     */
+    public void addHash(long hash)
+    {
+        long index = (hash & 0xffffffffL) % size;
+        long step = (hash >>> 32) % size;
+        for (int i = 0; i < numHashFunctions; i++)
+        {
+            setBit((int) index);
+            index = (index + step) % size;
+            step = (step + i) % size;
+        }
+    }
+
+    /**
+     * Adds a word that was already hashed with this filter's HashStrategy, while other threads may be adding words
+     * too. Each 64-bit word of bits is updated with an atomic OR, so no bit set by another thread is lost.
+     * Threads that query the filter afterwards must be ordered after the adds, as by joining the adding tasks.
+     *
+     * @param hash The hash of the word.
+     * @throws ReadOnlyBufferException if the bits are those of a snapshot.
+     */
+    public void addHashConcurrently(long hash)
+    {
+        long index = (hash & 0xffffffffL) % size;
+        long step = (hash >>> 32) % size;
+        for (int i = 0; i < numHashFunctions; i++)
+        {
+            setBitAtomically((int) index);
+            index = (index + step) % size;
+            step = (step + i) % size;
         }
     }
 
@@ -63,30 +228,189 @@ public class BloomFilter
      */
     public boolean contains(String word)
     {
-        for(MessageDigest hashFunc:hashFuncs)
+        if (hashStrategy == null)
+        {
+            byte[] wordBytes = word.getBytes(StandardCharsets.UTF_8);
+            for(MessageDigest hashFunc:hashFuncs)
+            {
+                if (!getBit(digestIndex(hashFunc, wordBytes)))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return containsHash(hashStrategy.hash(word));
+    }
+
+    /**
+     * Checks if a word that was already hashed with this filter's HashStrategy is possibly contained in the BloomFilter.
+     *
+     * @param hash The hash of the word.
+     * @return True if the word is possibly in the filter, false if it is definitely not.
+     */
+    public boolean containsHash(long hash)
+    {
+        long index = (hash & 0xffffffffL) % size;
+        long step = (hash >>> 32) % size;
+        for (int i = 0; i < numHashFunctions; i++)
         {
-            byte[] bts = hashFunc.digest(word.getBytes());
-            int inndex = (Math.abs(new BigInteger(bts).intValue())) % size;
-            if (!bits.get(inndex))
+            if (!getBit((int) index))
             {
                 return false;
             }
+            index = (index + step) % size;
+            step = (step + i) % size; // Growing step avoids the short cycles of plain double hashing
         }
         return true;
     }
 
+    private boolean getBit(int index)
+    {
+        return (bits.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    private void setBit(int index)
+    {
+        int word = index >>> 6;
+        bits.put(word, bits.get(word) | (1L << index));
+    }
+
+    private void setBitAtomically(int index)
+    {
+        int word = index >>> 6;
+        if (bits.hasArray())
+        {
+            HEAP_WORDS.getAndBitwiseOr(bits.array(), bits.arrayOffset() + word, 1L << index);
+        }
+        else if (direct != null)
+        {
+            DIRECT_WORDS.getAndBitwiseOr(direct, word << 3, 1L << index);
+        }
+        else
+        {
+            throw new ReadOnlyBufferException();
+        }
+    }
+
+    /**
+     * Gets the strategy used to hash words.
+     *
+     * @return The hash strategy, or null if the filter uses MessageDigest algorithms.
+     */
+    public HashStrategy getHashStrategy()
+    {
+        return hashStrategy;
+    }
+
+    /**
+     * Gets the number of bits set per word.
+     *
+     * @return The number of hash functions.
+     */
+    public int getNumHashFunctions()
+    {
+        return numHashFunctions;
+    }
+
+    /**
+     * Gets the number of bits in the filter.
+     *
+     * @return The number of bits.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Gets a read-only view of the bits, for saving the filter.
+     *
+     * @return The bits, 64 per word.
+     */
+    LongBuffer getBits()
+    {
+        return bits.asReadOnlyBuffer();
+    }
+
+    /**
+     * Tells whether the bits are kept in off-heap memory.
+     *
+     * @return True if the bits are off-heap, false if they are on the heap.
+     */
+    public boolean isOffHeap()
+    {
+        return bits.isDirect();
+    }
+
+    /**
+     * Gets the memory used by the bits.
+     *
+     * @return The size of the bits in bytes.
+     */
+    public long sizeInBytes()
+    {
+        return 8L * bits.capacity();
+    }
+
+    /**
+     * Gets the fraction of bits that are set.
+     * A ratio close to 1 means the filter is saturated and answers true for almost every word.
+     *
+     * @return The fill ratio, between 0 and 1.
+     */
+    public double getFillRatio()
+    {
+        long set = 0;
+        for (int i = 0; i < bits.limit(); i++)
+        {
+            set += Long.bitCount(bits.get(i));
+        }
+        return (double) set / size;
+    }
+
+    /**
+     * Estimates the current false positive probability from the measured fill ratio.
+     *
+     * @return The estimated probability that contains returns true for a word that was never added.
+     */
+    public double getExpectedFpp()
+    {
+        return Math.pow(getFillRatio(), numHashFunctions);
+    }
+
+    /**
+     * Maps a MessageDigest result to a bit index in compatibility mode.
+     * The low 32 bits of the digest are what BigInteger.intValue() returned, read here without allocating a BigInteger.
+     */
+    private int digestIndex(MessageDigest hashFunc, byte[] wordBytes)
+    {
+        byte[] bts = hashFunc.digest(wordBytes);
+        int n = bts.length;
+        int low = ((bts[n - 4] & 0xff) << 24) | ((bts[n - 3] & 0xff) << 16) | ((bts[n - 2] & 0xff) << 8) | (bts[n - 1] & 0xff);
+        return Math.abs(low % size);
+    }
+
     /**
      * Returns a string representation of the BloomFilter.
      *
-     * @return A string representation of the BitSet.
+     * @return The bits up to the last set bit, as '0' and '1' characters.
      */
     @Override
     public String toString()
     {
+        int length = 0; // Index after the last set bit
+        for (int i = bits.limit() - 1; i >= 0 && length == 0; i--)
+        {
+            if (bits.get(i) != 0)
+            {
+                length = 64 * i + 64 - Long.numberOfLeadingZeros(bits.get(i));
+            }
+        }
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < bits.length(); i++) 
+        for (int i = 0; i < length; i++) 
         {
-            sb.append(bits.get(i) ? "1" : "0");
+            sb.append(getBit(i) ? "1" : "0");
         }
         return sb.toString();
     }
@@ -1,72 +1,161 @@
 package test;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.Arrays;
-import java.util.Scanner;
 
 /**
  * The BookScrabbleHandler class implements the ClientHandler interface
  * to handle client requests for the BookScrabble game.
+ * By default a connection carries a single request. In keep-alive mode the handler answers request lines
+ * in order until the client closes the connection, sends an invalid request, or the read times out.
  */
 public class BookScrabbleHandler implements ClientHandler{
     private final DictionaryManager dictionaryManager; // Manager for dictionary operations
+    private final boolean keepAlive; // Whether a connection may carry more than one request
 
     /**
-     * Constructor to initialize the BookScrabbleHandler.
+     * Constructor to initialize the BookScrabbleHandler with one request per connection.
      */
     public BookScrabbleHandler() 
+    {
+        this(false);
+    }
+
+    /**
+     * Constructor to initialize the BookScrabbleHandler.
+     *
+     * @param keepAlive True to answer requests until the client closes the connection, false to answer a single request.
+     */
+    public BookScrabbleHandler(boolean keepAlive)
     {
         this.dictionaryManager = DictionaryManager.get(); // Get the singleton instance of DictionaryManager
+        this.keepAlive = keepAlive;
     }
 
     /**
      * Handles client requests by reading from the input stream and writing to the output stream.
+     * Answers to pipelined requests are buffered and flushed once no further request is waiting.
+     * A request that cannot be evaluated, such as one naming a missing book, ends the connection like an invalid
+     * request; the answers to the requests before it are still sent.
      *
      * @param inFromClient The input stream from the client.
      * @param outToClient  The output stream to the client.
      */
-    @SuppressWarnings("resource")
     public void handleClient(InputStream inFromclient, OutputStream outToClient)
     {
-        Scanner myScanner = new Scanner(new BufferedInputStream(inFromclient)); // Scanner for reading client input
+        BufferedReader in = new BufferedReader(new InputStreamReader(inFromclient)); // Reader for client input
         PrintWriter out = new PrintWriter(outToClient); // Writer for sending output to the client
-        if (myScanner.hasNextLine()) // Check if there is input from the client
-        {
-            String input = myScanner.nextLine();
-            String[] booksNames = input.split(","); // Split the input into an array of strings
-
-            int length = booksNames.length;
-            if (length<3) // Check if the input is valid
+        try {
+            String input;
+            while ((input = in.readLine()) != null)
             {
-                out.flush();
-                return;
+                String result;
+                try {
+                    result = respond(input);
+                }
+                catch (RuntimeException e) {
+                    result = null; // Treated as an invalid request
+                }
+                if (result == null) // An invalid request ends the connection
+                {
+                    break;
+                }
+                out.println(result); // Send the result to the client
+                if (!keepAlive)
+                {
+                    break;
+                }
+                if (!in.ready()) // Flush only when no pipelined request is already waiting
+                {
+                    out.flush();
+                }
             }
-            String action=booksNames[0];
-            boolean result;
-            if("Q".equals(action)) // If action is query
-            {
-                result = dictionaryManager.query(Arrays.copyOfRange(booksNames,1,length)); // Perform query
+        }
+        catch (IOException e) {
+            // The client went away or stayed idle past the read timeout
+        }
+        finally {
+            out.flush();
+            out.close();
+            try {
+                in.close();
             }
-            else if ("C".equals(action)) // If action is challenge
-            {
-                result = dictionaryManager.challenge(Arrays.copyOfRange(booksNames,1,length)); // Perform challenge
+            catch (IOException e) {
+                // Already closed together with the output
             }
-            else // If action is invalid
+        }
+    }
+
+    /**
+     * Evaluates one request line of the protocol.
+     * A request is "Q" (query) or "C" (challenge), followed by the book names and the word, separated by commas.
+     * A "B" (batch query) request ends with several words separated by '|' instead of a single word,
+     * and is answered with one "true" or "false" per word, in the same order and separated by '|'.
+     * An "S" (statistics) request, alone or followed by book names, is answered with the cache, Bloom filter
+     * and challenge statistics of those books, or of all loaded books, as name=value pairs separated by ';'.
+     *
+     * @param input The request line, without the line terminator.
+     * @return "true" or "false" as the answer (one per word for a batch), the statistics, or null if the request is invalid.
+     */
+    public String respond(String input)
+    {
+        String[] booksNames = input.split(","); // Split the input into an array of strings
+
+        int length = booksNames.length;
+        if ("S".equals(booksNames[0])) // If action is statistics
+        {
+            return dictionaryManager.getStats(Arrays.copyOfRange(booksNames,1,length)).toString();
+        }
+        if (length<3) // Check if the input is valid
+        {
+            return null;
+        }
+        String action=booksNames[0];
+        boolean result;
+        if("Q".equals(action)) // If action is query
+        {
+            result = dictionaryManager.query(Arrays.copyOfRange(booksNames,1,length)); // Perform query
+        }
+        else if ("C".equals(action)) // If action is challenge
+        {
+            result = dictionaryManager.challenge(Arrays.copyOfRange(booksNames,1,length)); // Perform challenge
+        }
+        else if ("B".equals(action)) // If action is batch query
+        {
+            String[] words = booksNames[length-1].split("\\|");
+            boolean[] results = dictionaryManager.queryAll(Arrays.copyOfRange(booksNames,1,length-1), words); // Perform batch query
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < results.length; i++)
             {
-                out.flush();
-                return;
+                if (i > 0)
+                {
+                    sb.append('|');
+                }
+                sb.append(results[i]);
             }
-            out.println(result); // Send the result to the client
-            out.flush();
+            return sb.toString();
+        }
+        else // If action is invalid
+        {
+            return null;
         }
-        
-        myScanner.close();
-        out.close();
+        return String.valueOf(result);
+    }
 
+    /**
+     * Tells whether connections are kept alive for several requests.
+     *
+     * @return True in keep-alive mode, false if each connection carries a single request.
+     */
+    @Override
+    public boolean isKeepAlive()
+    {
+        return keepAlive;
     }
 
     public void close(){}
@@ -10,6 +10,7 @@ public class CacheManager
     private int size; // Maximum size of the cache
     private CacheReplacementPolicy crp; // Cache replacement policy
     private HashSet<String> words; // Set to store cached words
+    private CacheStats stats = new CacheStats(); // Hits, misses and evictions of the cache
 
     /**
      * Constructor to create a CacheManager with the specified size and replacement policy.
@@ -26,28 +27,50 @@ public class CacheManager
 
     /**
      * Queries the cache to check if a word is present.
+     * A hit is reported to the replacement policy.
      *
      * @param word The word to query.
      * @return True if the word is in the cache, false otherwise.
      */
 	public boolean query(String word)
     {
-        return words.contains(word);
+        if (words.contains(word))
+        {
+            crp.touch(word);
+            stats.recordHit();
+            return true;
+        }
+        stats.recordMiss();
+        return false;
     }
 
     /**
      * Adds a word to the cache. If the cache is full, it removes a word based on the replacement policy.
+     * The victim is chosen before the new word is added, so the new word itself is never evicted.
      *
      * @param word The word to add to the cache.
      */
     public void add(String word)
     {
-        crp.add(word);
-        if(words.size() == this.size)
+        if(!words.contains(word) && words.size() >= this.size)
         {
             String s = crp.remove();
-            words.remove(s);
+            if (s != null && words.remove(s))
+            {
+                stats.recordEviction();
+            }
         }
+        crp.add(word);
         words.add(word);
     }
+
+    /**
+     * Gets the hit, miss and eviction counts of the cache.
+     *
+     * @return The statistics of the cache.
+     */
+    public CacheStats getStats()
+    {
+        return stats;
+    }
 }
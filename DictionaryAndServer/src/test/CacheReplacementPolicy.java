@@ -12,6 +12,16 @@ public interface CacheReplacementPolicy{
      */
 	void add(String word);
 
+	/**
+     * Records that a word already in the cache was found by a query.
+     * Policies that do not care about hits can keep the default, which does nothing.
+     *
+     * @param word The word that was found.
+     */
+	default void touch(String word)
+	{
+	}
+
 	/**
      * Removes a word from the cache according to the replacement policy.
      *
@@ -0,0 +1,100 @@
+package test;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The CacheStats class counts the hits, misses and evictions of a cache.
+ * The counters are LongAdders, so recording from many threads at once stays cheap.
+ */
+public class CacheStats
+{
+    private final LongAdder hits = new LongAdder(); // Queries that found the word
+    private final LongAdder misses = new LongAdder(); // Queries that did not find the word
+    private final LongAdder evictions = new LongAdder(); // Words removed to make room for new ones
+
+    /**
+     * Records a query that found the word.
+     */
+    public void recordHit()
+    {
+        hits.increment();
+    }
+
+    /**
+     * Records a query that did not find the word.
+     */
+    public void recordMiss()
+    {
+        misses.increment();
+    }
+
+    /**
+     * Records a word removed to make room for a new one.
+     */
+    public void recordEviction()
+    {
+        evictions.increment();
+    }
+
+    /**
+     * Gets the number of queries that found the word.
+     *
+     * @return The number of hits.
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of queries that did not find the word.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of words removed to make room for new ones.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the fraction of queries that found the word.
+     *
+     * @return The hit ratio, or 0 if there were no queries.
+     */
+    public double getHitRatio()
+    {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Adds the counts of other statistics to these ones.
+     *
+     * @param other The statistics to add.
+     * @return These statistics.
+     */
+    public CacheStats merge(CacheStats other)
+    {
+        hits.add(other.getHits());
+        misses.add(other.getMisses());
+        evictions.add(other.getEvictions());
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "hits=" + getHits() + ";misses=" + getMisses() + ";evictions=" + getEvictions();
+    }
+}
@@ -17,6 +17,30 @@ public interface ClientHandler
      * @param outToClient  The output stream to the client.
      */
 	void handleClient(InputStream inFromclient, OutputStream outToClient);
+
+	/**
+     * Supplies the handler to use for a single connection.
+     * The server may handle several connections at the same time, so handlers that keep per-connection
+     * state in fields should return a new instance here. Stateless handlers can keep the default, which shares this one.
+     *
+     * @return The handler for one connection.
+     */
+	default ClientHandler forConnection()
+	{
+		return this;
+	}
+	
+	/**
+     * Tells whether the handler may keep a connection open for several requests, waiting for the client between them.
+     * Such a handler holds its connection while the client is idle, so MyServer does not handle it inline by default
+     * and gives its connections an idle timeout.
+     *
+     * @return True if connections are kept alive, false if each connection is closed after its request.
+     */
+	default boolean isKeepAlive()
+	{
+		return false;
+	}
 	
 	/**
      * Closes the client handler.
@@ -0,0 +1,110 @@
+package test;
+
+/**
+ * The CountMinSketch class estimates how often keys were accessed recently, in a fixed, small amount of memory.
+ * Each key is counted in one counter, capped at 15, of each of DEPTH rows, and its estimate is the lowest of those
+ * counters, so collisions can only raise an estimate. All counters are halved periodically, so old popularity fades.
+ * It backs the TinyLFU admission of FingerprintCache. Counting is not serialized: a lost increment under
+ * contention only lowers an estimate.
+ */
+public class CountMinSketch
+{
+    private static final int DEPTH = 4; // Rows of the sketch
+    private static final int MAX_COUNT = 15; // Highest count a counter holds
+
+    private final byte[] counters; // DEPTH rows of widthMask + 1 counters
+    private final int widthMask; // Width of a row minus one, the width being a power of two
+    private final int period; // Accesses counted after which the counters are halved
+    private int additions; // Accesses counted since the counters were last halved
+
+    /**
+     * Constructor to create a CountMinSketch for the accesses of a cache.
+     * Each row has at least four counters per entry of the cache, and the counters are halved
+     * after ten accesses per entry.
+     *
+     * @param entries The number of entries of the cache.
+     */
+    public CountMinSketch(int entries)
+    {
+        if (entries <= 0)
+        {
+            throw new IllegalArgumentException("entries must be positive: " + entries);
+        }
+        int width = Integer.highestOneBit(Math.max(4, entries - 1)) << 3;
+        this.counters = new byte[DEPTH * width];
+        this.widthMask = width - 1;
+        this.period = 10 * entries;
+    }
+
+    /**
+     * Counts an access to a key, halving all counters once every period accesses.
+     *
+     * @param key The key that was accessed.
+     */
+    public void increment(long key)
+    {
+        long hash = mix(key);
+        for (int i = 0; i < DEPTH; i++)
+        {
+            int index = indexOf(hash, i);
+            if (counters[index] < MAX_COUNT)
+            {
+                counters[index]++;
+            }
+        }
+        if (++additions >= period)
+        {
+            additions = 0;
+            for (int i = 0; i < counters.length; i++)
+            {
+                counters[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Estimates the recent accesses to a key, as the lowest of its counters.
+     *
+     * @param key The key to estimate.
+     * @return The estimated number of recent accesses, at most 15.
+     */
+    public int frequency(long key)
+    {
+        long hash = mix(key);
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++)
+        {
+            frequency = Math.min(frequency, counters[indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+    /**
+     * Mixes the bits of a key, as callers may pass keys whose low bits are all alike.
+     */
+    private static long mix(long key)
+    {
+        long hash = (key ^ key >>> 31) * 0xBF58476D1CE4E5B9L;
+        return hash ^ hash >>> 29;
+    }
+
+    /**
+     * Gets the index of the counter of a mixed key in a row.
+     */
+    private int indexOf(long hash, int row)
+    {
+        int h1 = (int) (hash >>> 32);
+        int h2 = (int) hash | 1; // Odd, so the rows never pick the same column
+        return row * (widthMask + 1) + ((h1 + row * h2) & widthMask);
+    }
+
+    /**
+     * Gets the memory used by the counters.
+     *
+     * @return The size of the counters in bytes.
+     */
+    public long sizeInBytes()
+    {
+        return counters.length;
+    }
+}
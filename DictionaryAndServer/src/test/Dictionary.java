@@ -1,55 +1,321 @@
 package test;
 
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 /**
  * The Dictionary class manages word lookups and caching for the BookScrabble game.
- * It uses a Bloom filter and two cache managers to efficiently check if words exist.
+ * It uses a Bloom filter and two caches to efficiently check if words exist.
+ * A query hashes the word once; the caches and the Bloom filter all work on that 64-bit fingerprint,
+ * so a query that is answered from memory allocates nothing.
+ * The book files are split into chunks that are loaded in parallel on the common fork-join pool.
+ * Once constructed, a Dictionary may be queried and challenged from several threads at once.
+ * It counts how its queries and challenges are answered; see getStats.
  */
 public class Dictionary 
 {
+    private static final double BLOOM_FPP = 0.001; // Target false positive probability of the Bloom filter
+    private static final long CHUNK_SIZE = 8L << 20; // Bytes of a book file loaded by one task
+
     private String[] allFileNames; // Array of file names containing the dictionary words
-    private CacheManager wordsExists; // Cache for words that exist
-    private CacheManager wordsNotExists; // Cache for words that do not exist
+    private FingerprintCache wordsExists; // Cache for words that exist
+    private FingerprintCache wordsNotExists; // Cache for words that do not exist
     private BloomFilter bloomFilter; // Bloom filter for probabilistic word existence checks
+    private HashStrategy hashStrategy; // Hash giving the fingerprint of a word, shared with the Bloom filter
+    private WordIndex wordIndex; // Exact index of the words for challenges, null to search the files instead
+    private ConcurrentHashMap<String,Long> loadNanos = new ConcurrentHashMap<>(); // Time spent loading each file
+    private LongAdder bloomPositives = new LongAdder(); // Queries the Bloom filter answered with true
+    private LongAdder bloomNegatives = new LongAdder(); // Queries the Bloom filter answered with false
+    private LongAdder diskChallenges = new LongAdder(); // Challenges answered by searching the book files
+    private LatencyHistogram challengeLatency = new LatencyHistogram(); // Durations of all challenges
     
     /**
      * Constructor to create a Dictionary with the specified file names.
+     * Challenges are answered from an in-memory index of the words.
      *
      * @param fileNames The names of the files containing the dictionary words.
      */
     public Dictionary(String...fileNames)
+    {
+        this(true, false, fileNames);
+    }
+
+    /**
+     * Constructor to create a Dictionary with the specified file names, keeping its Bloom filter and index on the heap.
+     *
+     * @param buildIndex True to answer challenges from an in-memory index of the words,
+     *                   false to save that memory and search the files on every challenge.
+     * @param fileNames  The names of the files containing the dictionary words.
+     */
+    public Dictionary(boolean buildIndex, String...fileNames)
+    {
+        this(buildIndex, false, fileNames);
+    }
+
+    /**
+     * Constructor to create a Dictionary with the specified file names.
+     *
+     * @param buildIndex True to answer challenges from an in-memory index of the words,
+     *                   false to save that memory and search the files on every challenge.
+     * @param offHeap    True to keep the Bloom filter bits and the index in off-heap memory, which keeps large
+     *                   books out of the garbage-collected heap; false to keep them on the heap.
+     * @param fileNames  The names of the files containing the dictionary words.
+     */
+    public Dictionary(boolean buildIndex, boolean offHeap, String...fileNames)
     {
         this.allFileNames = fileNames;
-        this.wordsExists = new CacheManager(400,new LRU()); // LRU cache for words that exist
-        this.wordsNotExists = new CacheManager(100,new LFU()); // LFU cache for words that do not exist
-        this.bloomFilter = new BloomFilter(256, "SHA1","MD5"); // Bloom filter with SHA1 and MD5 hash functions
-       
-        // Populate the Bloom filter with words from the dictionary files
+        this.wordsExists = new FingerprintCache(20000); // Cache for words that exist
+        this.wordsNotExists = new FingerprintCache(10000); // Cache for words that do not exist
+
+        // Split the books into chunks that are counted and loaded in parallel
+        List<Chunk> chunks = new ArrayList<>();
         for(String fileName : fileNames)
         {
-            Scanner myScanner = null;
+            long size;
             try{
-                myScanner = new Scanner(new BufferedReader(new FileReader(fileName)));
-                while(myScanner.hasNext())
-                {
-                    this.bloomFilter.add(myScanner.next());
-                }
+                size = Files.size(Paths.get(fileName));
             }
-            catch(FileNotFoundException e){
-                throw new RuntimeException("file " + fileName + "is not found");
+            catch(IOException e){
+                throw fileError(fileName, e);
             }
-            finally{
-                if (myScanner != null)
-                    myScanner.close();
+            long from = 0;
+            do
+            {
+                chunks.add(new Chunk(fileName, from, Math.min(size, from + CHUNK_SIZE)));
+                from += CHUNK_SIZE;
+            } while (from < size);
+        }
+
+        // Size the Bloom filter for the number of words in the dictionary files
+        long wordCount = chunks.parallelStream().mapToLong(this::countWords).sum();
+        this.bloomFilter = BloomFilter.create(wordCount, BLOOM_FPP, offHeap);
+        this.hashStrategy = bloomFilter.getHashStrategy();
+
+        // Load the chunks into the shared Bloom filter, each with its own list of words for the index
+        List<WordIndex.WordList> parts = chunks.parallelStream()
+                .map(chunk -> load(chunk, buildIndex))
+                .collect(Collectors.toList());
+        if (buildIndex)
+        {
+            WordIndex.WordList all = new WordIndex.WordList();
+            for (int i = 0; i < parts.size(); i++)
+            {
+                all.addAll(parts.get(i));
+                parts.set(i, null); // Free each part once copied
             }
+            this.wordIndex = new WordIndex(all, offHeap);
         }
     }
 
+    /**
+     * Constructor to create a Dictionary from a Bloom filter and index that were built before, such as a snapshot's.
+     *
+     * @param fileNames   The names of the files containing the dictionary words.
+     * @param bloomFilter The Bloom filter of the words, using a HashStrategy.
+     * @param wordIndex   The index of the words, or null to search the files on every challenge.
+     */
+    Dictionary(String[] fileNames, BloomFilter bloomFilter, WordIndex wordIndex)
+    {
+        this.allFileNames = fileNames;
+        this.wordsExists = new FingerprintCache(20000); // Cache for words that exist
+        this.wordsNotExists = new FingerprintCache(10000); // Cache for words that do not exist
+        this.bloomFilter = bloomFilter;
+        this.hashStrategy = bloomFilter.getHashStrategy();
+        this.wordIndex = wordIndex;
+    }
+
+    /**
+     * A byte range of a book file, loaded by one task.
+     */
+    private static class Chunk
+    {
+        final String fileName; // The book file
+        final long from; // File offset where the range starts
+        final long to; // File offset where the range ends, exclusive
+
+        Chunk(String fileName, long from, long to)
+        {
+            this.fileName = fileName;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Counts the words starting in a chunk.
+     *
+     * @param chunk The chunk to count.
+     * @return The number of words.
+     */
+    private long countWords(Chunk chunk)
+    {
+        long start = System.nanoTime();
+        try{
+            return WordTokenizer.countWords(chunk.fileName, chunk.from, chunk.to);
+        }
+        catch(IOException e){
+            throw fileError(chunk.fileName, e);
+        }
+        finally{
+            loadNanos.merge(chunk.fileName, System.nanoTime() - start, Long::sum);
+        }
+    }
+
+    /**
+     * Loads the words starting in a chunk into the Bloom filter, hashing the mapped bytes directly.
+     * Chunks are loaded in parallel, so the words are added with addHashConcurrently.
+     *
+     * @param chunk      The chunk to load.
+     * @param buildIndex True to also copy the words for the index.
+     * @return The words of the chunk, or null if not building the index.
+     */
+    private WordIndex.WordList load(Chunk chunk, boolean buildIndex)
+    {
+        long start = System.nanoTime();
+        WordIndex.WordList words = buildIndex ? new WordIndex.WordList() : null;
+        try{
+            WordTokenizer.forEachWord(chunk.fileName, chunk.from, chunk.to, (buffer, offset, length) -> {
+                bloomFilter.addHashConcurrently(hashStrategy.hash(buffer, offset, length));
+                if (words != null)
+                {
+                    words.add(buffer, offset, length);
+                }
+                return true;
+            });
+        }
+        catch(IOException e){
+            throw fileError(chunk.fileName, e);
+        }
+        loadNanos.merge(chunk.fileName, System.nanoTime() - start, Long::sum);
+        return words;
+    }
+
+    /**
+     * Gets the strategy that gives the fingerprint of a word for queryHash.
+     *
+     * @return The hash strategy.
+     */
+    public HashStrategy getHashStrategy()
+    {
+        return hashStrategy;
+    }
+
+    /**
+     * Gets the names of the book files of the dictionary.
+     *
+     * @return The file names.
+     */
+    String[] getFileNames()
+    {
+        return allFileNames.clone();
+    }
+
+    /**
+     * Gets the Bloom filter of the dictionary, for saving it.
+     *
+     * @return The Bloom filter.
+     */
+    BloomFilter getBloomFilter()
+    {
+        return bloomFilter;
+    }
+
+    /**
+     * Gets the index of the dictionary, for saving it.
+     *
+     * @return The index, or null if challenges search the files.
+     */
+    WordIndex getWordIndex()
+    {
+        return wordIndex;
+    }
+
+    /**
+     * Gets the time spent loading each book file.
+     * Chunks of a file are loaded in parallel, so this is the sum over the threads that worked on the file.
+     *
+     * @return The load time in milliseconds by file name.
+     */
+    public Map<String,Long> getLoadTimes()
+    {
+        Map<String,Long> times = new LinkedHashMap<>();
+        for (String fileName : allFileNames)
+        {
+            times.put(fileName, TimeUnit.NANOSECONDS.toMillis(loadNanos.getOrDefault(fileName, 0L)));
+        }
+        return times;
+    }
+
+    /**
+     * Creates the exception thrown when a dictionary file cannot be loaded.
+     *
+     * @param fileName The name of the file.
+     * @param e        The cause.
+     * @return The exception to throw.
+     */
+    private static RuntimeException fileError(String fileName, IOException e)
+    {
+        if (e instanceof NoSuchFileException)
+        {
+            return new RuntimeException("file " + fileName + "is not found");
+        }
+        return new RuntimeException("file " + fileName + " could not be read", e);
+    }
+
+    /**
+     * Gets the fraction of set bits in the Bloom filter, for detecting saturation.
+     *
+     * @return The fill ratio of the Bloom filter.
+     */
+    public double getBloomFillRatio()
+    {
+        return bloomFilter.getFillRatio();
+    }
+
+    /**
+     * Estimates the memory used by the dictionary: its Bloom filter bits and index, which may be off-heap,
+     * and its caches. Small fixed overheads are left out.
+     *
+     * @return The estimated size of the dictionary in bytes.
+     */
+    public long getSizeInBytes()
+    {
+        return bloomFilter.sizeInBytes() + (wordIndex != null ? wordIndex.sizeInBytes() : 0)
+                + wordsExists.sizeInBytes() + wordsNotExists.sizeInBytes();
+    }
+
+    /**
+     * Gets the estimated false positive probability of the Bloom filter.
+     *
+     * @return The estimated false positive probability.
+     */
+    public double getBloomExpectedFpp()
+    {
+        return bloomFilter.getExpectedFpp();
+    }
+
+    /**
+     * Gets a snapshot of how the queries and challenges of this dictionary were answered so far.
+     *
+     * @return The statistics of the dictionary.
+     */
+    public DictionaryStats getStats()
+    {
+        return new DictionaryStats(wordsExists.getStats(), wordsNotExists.getStats(), bloomPositives.sum(),
+                bloomNegatives.sum(), diskChallenges.sum(), challengeLatency);
+    }
+
     /**
      * Queries if a word exists in the dictionary.
      *
@@ -58,22 +324,36 @@ public class Dictionary
      */
     public boolean query(String word)
     {
-        if (wordsExists.query(word))
+        return queryHash(hashStrategy.hash(word));
+    }
+
+    /**
+     * Queries if a word that was already hashed with this dictionary's HashStrategy exists in the dictionary.
+     * Lets a caller that queries several dictionaries with the same strategy hash the word only once.
+     *
+     * @param fingerprint The hash of the word.
+     * @return True if the word exists, false otherwise.
+     */
+    public boolean queryHash(long fingerprint)
+    {
+        if (wordsExists.query(fingerprint))
         {
             return true;
         }
-        if (wordsNotExists.query(word))
+        if (wordsNotExists.query(fingerprint))
         {
             return false;
         }
-        if (bloomFilter.contains(word))
+        if (bloomFilter.containsHash(fingerprint))
         {
-            wordsExists.add(word);
+            bloomPositives.increment();
+            wordsExists.add(fingerprint);
             return true;
         }
         else 
         {
-            wordsNotExists.add(word);
+            bloomNegatives.increment();
+            wordsNotExists.add(fingerprint);
             return false;
         }
     }
@@ -86,20 +366,38 @@ public class Dictionary
      */
     public boolean challenge(String word)
     {
+        long start = System.nanoTime();
         try{
-            if (IOSearcher.search(word,allFileNames))
+            boolean found;
+            if (wordIndex != null)
+            {
+                found = wordIndex.contains(word);
+            }
+            else
+            {
+                diskChallenges.increment();
+                found = IOSearcher.search(word,allFileNames);
+            }
+            // The answer is exact, so it replaces whatever the Bloom filter made the caches believe
+            long fingerprint = hashStrategy.hash(word);
+            if (found)
             {
-                wordsExists.add(word);
+                wordsNotExists.remove(fingerprint);
+                wordsExists.admit(fingerprint);
                 return true;
             }
             else
             {
-                wordsNotExists.add(word);
+                wordsExists.remove(fingerprint);
+                wordsNotExists.admit(fingerprint);
                 return false;
             }
         }
         catch(Exception e){
             throw new RuntimeException("File does not exists");
         }
+        finally{
+            challengeLatency.record(System.nanoTime() - start);
+        }
     }
 }
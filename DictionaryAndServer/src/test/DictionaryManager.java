@@ -1,24 +1,118 @@
 package test;
 
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The DictionaryManager class manages multiple Dictionary instances.
  * It follows the singleton pattern to ensure only one instance of the manager exists.
+ * It is safe to use from multiple threads: each book is loaded exactly once, concurrent first requests
+ * for a book wait for that single load, and lookups of loaded books do not lock.
+ * With a memory budget set, the least recently used dictionaries are dropped whenever a load takes the loaded
+ * dictionaries over the budget. Queries that already hold a dropped dictionary finish normally, and its memory is
+ * reclaimed once they are done. A dropped book is loaded again on its next request, from its snapshot if there is one.
+ * Optionally, a set of books that is queried together often gets a combined dictionary with one Bloom filter over all
+ * of its books, built in the background, so a query of a word that none of the books has is a single probe.
+ * The combined dictionary only rules words out: a word it may have is still queried book by book, so the answers
+ * that challenges corrected in the books' caches hold for the set too.
  */
 public class DictionaryManager 
 {
-    private static DictionaryManager instance; // Singleton instance of DictionaryManager
-    private HashMap<String,Dictionary> dictionaries; // HashMap to store dictionaries by file name
+    private static final int MAX_TRACKED_BOOK_SETS = 10000; // Book sets whose requests are counted before starting over
+
+    private ConcurrentHashMap<String,Loader> dictionaries; // Map of dictionary loads by file name
+    private ConcurrentHashMap<String,Loader> combined = new ConcurrentHashMap<>(); // Combined dictionary loads by book set
+    private ConcurrentHashMap<String,LongAdder> bookSetRequests = new ConcurrentHashMap<>(); // Queries of book sets not combined yet
+    private volatile int combineThreshold = 0; // Queries of a book set after which it is combined, 0 for never
+    private final Object evictionLock = new Object(); // Serializes enforcing the memory budget
+    private volatile long memoryBudget = Long.MAX_VALUE; // Bytes the loaded dictionaries may use together
+    private volatile boolean indexBooks = true; // Whether new dictionaries keep an in-memory index for challenges
+    private volatile boolean offHeap = false; // Whether new dictionaries keep their Bloom filter and index off-heap
+    private volatile Path snapshotDirectory; // Directory of dictionary snapshots, null to always load the books
     
+    /**
+     * The load of one dictionary, with the time it was last asked for.
+     */
+    private static class Loader extends FutureTask<Dictionary>
+    {
+        volatile long lastUsed = System.nanoTime(); // When the dictionary was last requested, from System.nanoTime
+
+        Loader(Callable<Dictionary> load)
+        {
+            super(load);
+        }
+
+        /**
+         * Gets the dictionary if it has been loaded successfully.
+         *
+         * @return The dictionary, or null if it is still loading or failed to load.
+         */
+        Dictionary loaded()
+        {
+            if (!isDone())
+            {
+                return null;
+            }
+            try {
+                return get();
+            }
+            catch (InterruptedException | ExecutionException e) {
+                return null; // Done, so get did not wait; the load failed
+            }
+        }
+    }
+
+    /**
+     * A loaded dictionary considered for eviction, with its last use fixed at the time of the check.
+     */
+    private static class Candidate
+    {
+        final Map<String,Loader> map; // The map holding the dictionary
+        final String fileName; // The key of the dictionary in the map
+        final Loader loader; // The load of the dictionary
+        final long lastUsed; // When the dictionary was last requested
+        final long size; // Estimated memory used by the dictionary
+
+        Candidate(Map<String,Loader> map, String fileName, Loader loader, long size)
+        {
+            this.map = map;
+            this.fileName = fileName;
+            this.loader = loader;
+            this.lastUsed = loader.lastUsed;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Holder class so the singleton is created lazily and safely by the class loader.
+     */
+    private static class Holder
+    {
+        private static final DictionaryManager INSTANCE = new DictionaryManager(); // Singleton instance of DictionaryManager
+    }
+
     /**
      * Private constructor to create a DictionaryManager.
-     * Initializes the HashMap to store dictionaries.
+     * Initializes the map to store dictionaries.
      */
     private DictionaryManager()
     {
-        this.dictionaries = new HashMap<>();
+        this.dictionaries = new ConcurrentHashMap<>();
     }
 
     /**
@@ -28,38 +122,410 @@ public class DictionaryManager
      */
     public static DictionaryManager get()
     {
-        if(instance == null)
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Sets whether dictionaries loaded from now on keep an in-memory index of their words for challenges.
+     * Turning it off saves memory, at the cost of searching the book file on every challenge.
+     *
+     * @param indexBooks True to index books, false to search the files.
+     */
+    public void setIndexBooks(boolean indexBooks)
+    {
+        this.indexBooks = indexBooks;
+    }
+
+    /**
+     * Sets whether dictionaries loaded from now on keep their Bloom filter bits and index in off-heap memory.
+     * Turning it on keeps the heap, and with it garbage collection pauses, small on servers holding many books.
+     *
+     * @param offHeap True to store new dictionaries off-heap, false to store them on the heap.
+     */
+    public void setOffHeap(boolean offHeap)
+    {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Sets the directory where dictionaries are saved after loading, and mapped from on later starts.
+     * A dictionary is loaded from its book only when there is no snapshot of it yet or the book has changed.
+     *
+     * @param directory The snapshot directory, or null to always load the books.
+     */
+    public void setSnapshotDirectory(String directory)
+    {
+        this.snapshotDirectory = directory != null ? Paths.get(directory) : null;
+    }
+
+    /**
+     * Sets how much memory the loaded dictionaries may use together, as estimated by Dictionary.getSizeInBytes.
+     * The least recently used dictionaries are dropped right away if they are over the new budget.
+     * The most recently used dictionary is always kept, even if it alone is over the budget.
+     * Uses are only timed while there is a budget, so when one is first set, dictionaries rank by when they were
+     * loaded.
+     *
+     * @param bytes The budget in bytes, or Long.MAX_VALUE for no limit.
+     */
+    public void setMemoryBudget(long bytes)
+    {
+        if (bytes <= 0)
         {
-            instance = new DictionaryManager();
+            throw new IllegalArgumentException("memory budget must be positive: " + bytes);
         }
-        return instance;
+        this.memoryBudget = bytes;
+        enforceBudget();
+    }
+
+    /**
+     * Sets how often a set of two or more books must be queried together before it gets a combined dictionary.
+     * The combined dictionary is built from the books in the background; until it is ready, the books are queried
+     * one by one. Once ready, it answers the words that none of the books has, and the books are queried one by one
+     * for the others. Its memory counts towards the memory budget like any other dictionary.
+     *
+     * @param requests The number of queries of a book set, or 0 to never combine books.
+     */
+    public void setCombineThreshold(int requests)
+    {
+        if (requests < 0)
+        {
+            throw new IllegalArgumentException("combine threshold must not be negative: " + requests);
+        }
+        this.combineThreshold = requests;
+        if (requests == 0)
+        {
+            combined.clear();
+            bookSetRequests.clear();
+        }
+    }
+
+    /**
+     * Estimates the memory used by all loaded dictionaries, including combined ones.
+     *
+     * @return The total of Dictionary.getSizeInBytes over the loaded dictionaries.
+     */
+    public long getMemoryUsage()
+    {
+        long total = 0;
+        List<Loader> loaders = new ArrayList<>(dictionaries.values());
+        loaders.addAll(combined.values());
+        for (Loader loader : loaders)
+        {
+            Dictionary dictionary = loader.loaded();
+            if (dictionary != null)
+            {
+                total += dictionary.getSizeInBytes();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Records that a dictionary was requested. Without a budget nothing is ever dropped, so the time is not
+     * written, which would make every query write to a line shared by all threads asking for the same book.
+     */
+    private void touch(Loader loader)
+    {
+        if (memoryBudget != Long.MAX_VALUE)
+        {
+            loader.lastUsed = System.nanoTime();
+        }
+    }
+
+    /**
+     * Drops least recently used dictionaries until the loaded ones fit the memory budget or only one is left.
+     */
+    private void enforceBudget()
+    {
+        long budget = memoryBudget;
+        if (budget == Long.MAX_VALUE)
+        {
+            return;
+        }
+        synchronized (evictionLock)
+        {
+            List<Candidate> candidates = new ArrayList<>();
+            long total = 0;
+            for (Map<String,Loader> map : Arrays.asList(dictionaries, combined))
+            {
+                for (Map.Entry<String,Loader> entry : map.entrySet())
+                {
+                    Dictionary dictionary = entry.getValue().loaded();
+                    if (dictionary != null)
+                    {
+                        Candidate candidate = new Candidate(map, entry.getKey(), entry.getValue(), dictionary.getSizeInBytes());
+                        candidates.add(candidate);
+                        total += candidate.size;
+                    }
+                }
+            }
+            candidates.sort(Comparator.comparingLong(c -> c.lastUsed));
+            for (int i = 0; i < candidates.size() - 1 && total > budget; i++)
+            {
+                Candidate victim = candidates.get(i);
+                if (victim.map.remove(victim.fileName, victim.loader))
+                {
+                    total -= victim.size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the dictionary for a file, loading it on first use.
+     * The thread that registers the load runs it; other threads asking for the same file wait for its result.
+     * A failed load is removed so a later request can try again, and a successful one may drop other dictionaries
+     * to stay within the memory budget.
+     *
+     * @param fileName The name of the dictionary file.
+     * @return The loaded dictionary.
+     */
+    private Dictionary getDictionary(String fileName)
+    {
+        Loader loader = dictionaries.get(fileName);
+        boolean loadedHere = false;
+        if (loader == null)
+        {
+            Loader newLoader = new Loader(() -> load(fileName));
+            loader = dictionaries.putIfAbsent(fileName, newLoader);
+            if (loader == null)
+            {
+                loader = newLoader;
+                newLoader.run();
+                loadedHere = true;
+            }
+        }
+        touch(loader);
+        try {
+            Dictionary dictionary = loader.get();
+            if (loadedHere)
+            {
+                enforceBudget();
+            }
+            return dictionary;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while loading " + fileName);
+        }
+        catch (ExecutionException e) {
+            dictionaries.remove(fileName, loader);
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("could not load " + fileName, e.getCause());
+        }
+    }
+
+    /**
+     * Gets the combined dictionary of a set of books if it is ready, and counts the query of the set otherwise.
+     * The query that reaches the combine threshold starts building the combined dictionary in the background.
+     *
+     * @param fileNames The names of the dictionary files, in any order and possibly repeated.
+     * @return The combined dictionary, or null if the books must be queried one by one.
+     */
+    private Dictionary getCombined(String[] fileNames)
+    {
+        int threshold = combineThreshold;
+        if (threshold == 0)
+        {
+            return null;
+        }
+        String[] books = new TreeSet<>(Arrays.asList(fileNames)).toArray(new String[0]);
+        if (books.length < 2)
+        {
+            return null;
+        }
+        String key = String.join("\n", books);
+        Loader loader = combined.get(key);
+        if (loader != null)
+        {
+            touch(loader);
+            if (loader.isDone() && loader.loaded() == null) // The build failed, so count the set again from the start
+            {
+                combined.remove(key, loader);
+            }
+            return loader.loaded();
+        }
+
+        if (bookSetRequests.size() >= MAX_TRACKED_BOOK_SETS)
+        {
+            bookSetRequests.clear();
+        }
+        LongAdder requests = bookSetRequests.computeIfAbsent(key, k -> new LongAdder());
+        requests.increment();
+        if (requests.sum() >= threshold)
+        {
+            boolean offHeap = this.offHeap;
+            Loader newLoader = new Loader(() -> new Dictionary(false, offHeap, books));
+            if (combined.putIfAbsent(key, newLoader) == null)
+            {
+                bookSetRequests.remove(key);
+                ForkJoinPool.commonPool().execute(() -> {
+                    newLoader.run();
+                    enforceBudget();
+                });
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads the dictionary of a book, from its snapshot if there is an up-to-date one.
+     * Otherwise the book is loaded and a new snapshot saved; failing to save it only costs the next start time.
+     *
+     * @param fileName The name of the dictionary file.
+     * @return The dictionary.
+     */
+    private Dictionary load(String fileName)
+    {
+        Path directory = snapshotDirectory;
+        if (directory == null)
+        {
+            return new Dictionary(indexBooks, offHeap, fileName);
+        }
+        Path snapshot = directory.resolve(Paths.get(fileName).getFileName() + "."
+                + Long.toHexString(new Murmur3().hash(Paths.get(fileName).toAbsolutePath().toString())) + ".snapshot");
+        Dictionary dictionary = DictionarySnapshot.load(snapshot, indexBooks, fileName);
+        if (dictionary != null)
+        {
+            return dictionary;
+        }
+        DictionarySnapshot.BookStamp[] stamps;
+        try {
+            stamps = DictionarySnapshot.stamp(fileName);
+        }
+        catch (IOException e) {
+            return new Dictionary(indexBooks, offHeap, fileName); // Reports why the book cannot be read
+        }
+        dictionary = new Dictionary(indexBooks, offHeap, fileName);
+        try {
+            DictionarySnapshot.save(dictionary, snapshot, stamps);
+        }
+        catch (IOException e) {
+            // Keep serving from the loaded dictionary
+        }
+        return dictionary;
+    }
+
+    /**
+     * Gets the statistics of loaded dictionaries, merged into one snapshot.
+     * Books that are not loaded, or are still loading, are skipped rather than loaded.
+     *
+     * @param fileNames The names of the dictionary files, or none for all loaded dictionaries, combined ones included.
+     * @return The merged statistics.
+     */
+    public DictionaryStats getStats(String... fileNames)
+    {
+        DictionaryStats stats = new DictionaryStats();
+        List<Loader> loaders = new ArrayList<>(dictionaries.values());
+        loaders.addAll(combined.values());
+        if (fileNames.length > 0)
+        {
+            List<Loader> selected = new ArrayList<>();
+            for (String fileName : new LinkedHashSet<>(Arrays.asList(fileNames)))
+            {
+                Loader loader = dictionaries.get(fileName);
+                if (loader != null)
+                {
+                    selected.add(loader);
+                }
+            }
+            loaders = selected;
+        }
+        for (Loader loader : loaders)
+        {
+            Dictionary dictionary = loader.loaded();
+            if (dictionary != null)
+            {
+                stats.merge(dictionary.getStats());
+            }
+        }
+        return stats;
     }
 
     /**
      * Queries if a word exists in any of the specified dictionary files.
+     * The word is hashed once for all dictionaries that share a hash strategy, and the books are queried in order
+     * only until one of them has the word. A book set with a combined dictionary is only queried book by book if
+     * that dictionary may have the word.
      *
      * @param files The names of the dictionary files and the word to query.
      * @return True if the word exists in any of the dictionaries, false otherwise.
      */
     public boolean query(String...files)
     {
-        boolean existsWord = false;
         String word_to_search = files[files.length-1];
         int length = files.length - 1;
+        HashStrategy hashedWith = null; // Strategy that produced the fingerprint
+        long fingerprint = 0; // Hash of the word
+        if (length > 1 && combineThreshold > 0)
+        {
+            Dictionary combinedDictionary = getCombined(Arrays.copyOf(files, length));
+            if (combinedDictionary != null)
+            {
+                hashedWith = combinedDictionary.getHashStrategy();
+                fingerprint = hashedWith.hash(word_to_search);
+                if (!combinedDictionary.queryHash(fingerprint))
+                {
+                    return false; // A Bloom filter has no false negatives, so no book has the word
+                }
+            }
+        }
         for(int i = 0 ; i < length ; i++)
         {
-            if (!dictionaries.containsKey(files[i]))
+            Dictionary dictionary = getDictionary(files[i]);
+            if (!dictionary.getHashStrategy().equals(hashedWith))
             {
-                Dictionary new_dic = new Dictionary(files[i]);
-                dictionaries.put(files[i], new_dic);
+                hashedWith = dictionary.getHashStrategy();
+                fingerprint = hashedWith.hash(word_to_search);
             }
-            if(dictionaries.get(files[i]).query(word_to_search))
+            if(dictionary.queryHash(fingerprint))
             {
-                existsWord = true;
+                return true;
             }
+        }
+        return false;
+    }
 
+    /**
+     * Queries several words against the same dictionary files at once.
+     * Each dictionary is looked up once for the whole batch, and each word is hashed once for all dictionaries
+     * that share a hash strategy. A word is no longer queried once a book has it.
+     *
+     * @param fileNames The names of the dictionary files.
+     * @param words     The words to query.
+     * @return For each word, true if it exists in any of the dictionaries, false otherwise.
+     */
+    public boolean[] queryAll(String[] fileNames, String... words)
+    {
+        boolean[] results = new boolean[words.length];
+        HashStrategy hashedWith = null; // Strategy that produced the fingerprints
+        long[] fingerprints = new long[words.length]; // Hash of each word
+        for (String fileName : fileNames)
+        {
+            Dictionary dictionary = getDictionary(fileName);
+            if (!dictionary.getHashStrategy().equals(hashedWith))
+            {
+                hashedWith = dictionary.getHashStrategy();
+                for (int j = 0; j < words.length; j++)
+                {
+                    if (!results[j])
+                    {
+                        fingerprints[j] = hashedWith.hash(words[j]);
+                    }
+                }
+            }
+            for (int j = 0; j < words.length; j++)
+            {
+                if (!results[j] && dictionary.queryHash(fingerprints[j]))
+                {
+                    results[j] = true;
+                }
+            }
         }
-        return existsWord;
+        return results;
     }
 
     /**
@@ -75,12 +541,7 @@ public class DictionaryManager
         int length = files.length - 1;
         for(int i = 0 ; i < length ; i++)
         {
-            if (!dictionaries.containsKey(files[i]))
-            {
-                Dictionary new_dic = new Dictionary(files[i]);
-                dictionaries.put(files[i], new_dic);
-            }
-            if (dictionaries.get(files[i]).challenge(word_to_search))
+            if (getDictionary(files[i]).challenge(word_to_search))
             {
                 existsWord = true;
             }
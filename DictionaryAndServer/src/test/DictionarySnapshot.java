@@ -0,0 +1,301 @@
+package test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The DictionarySnapshot class saves a loaded Dictionary to a compact binary file and maps it back into memory,
+ * so a server can start without reading and hashing its books again.
+ * A snapshot holds the Bloom filter bits and hash parameters, the word index if there is one, and the size,
+ * modification time and content hash of each book. It is only used while every book still matches: a book with the
+ * same size and modification time is trusted as is, and one that was only touched is compared by content hash.
+ * A mapped snapshot is read-only and lives off-heap. Loading it reads no book; only the index offsets are checked,
+ * one int per word, so a damaged snapshot is rebuilt from the books instead of answering from garbage.
+ *
+ * The file is big-endian:
+ * magic, version, book count, Bloom filter size, hash functions, Bloom filter words, index words (-1 for none)
+ * and index bytes as ints; the Murmur3 seed as a long; size, modification time and hash of each book as longs;
+ * then the Bloom filter bits as longs, the index offsets as ints and the index words as UTF-8 bytes.
+ */
+public class DictionarySnapshot
+{
+    private static final int MAGIC = 0x42534e50; // "BSNP", marks a snapshot file
+    private static final int VERSION = 1; // Version of the snapshot format
+    private static final int HEADER_BYTES = 8 * 4 + 8; // Size of the fixed part of the header
+    private static final int BOOK_BYTES = 3 * 8; // Size of the stamp of one book
+    private static final int REGION = 1 << 30; // Largest part of a book mapped at once for hashing
+
+    /**
+     * The BookStamp class identifies the content of a book file when a snapshot is saved.
+     */
+    public static class BookStamp
+    {
+        private final long size; // Size of the book in bytes
+        private final long modified; // Modification time of the book in milliseconds
+        private final long hash; // Hash of the content of the book
+
+        private BookStamp(long size, long modified, long hash)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        /**
+         * Stamps a book file as it is now.
+         *
+         * @param fileName The name of the book file.
+         * @return The stamp of the book.
+         * @throws IOException if the file cannot be read.
+         */
+        public static BookStamp of(String fileName) throws IOException
+        {
+            Path path = Paths.get(fileName);
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            return new BookStamp(Files.size(path), modified, contentHash(path));
+        }
+
+        /**
+         * Checks if a book file still has the content it had when stamped.
+         * The content is only hashed again if the size is the same but the modification time is not.
+         *
+         * @param fileName The name of the book file.
+         * @return True if the book is unchanged, false otherwise.
+         * @throws IOException if the file cannot be read.
+         */
+        boolean matches(String fileName) throws IOException
+        {
+            Path path = Paths.get(fileName);
+            if (Files.size(path) != size)
+            {
+                return false;
+            }
+            return Files.getLastModifiedTime(path).toMillis() == modified || contentHash(path) == hash;
+        }
+    }
+
+    /**
+     * Stamps the book files of a dictionary. Stamp the books before building the dictionary, so that a book changed
+     * during the build makes the snapshot stale instead of silently out of date.
+     *
+     * @param fileNames The names of the book files.
+     * @return The stamps, in the same order.
+     * @throws IOException if a file cannot be read.
+     */
+    public static BookStamp[] stamp(String... fileNames) throws IOException
+    {
+        BookStamp[] stamps = new BookStamp[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++)
+        {
+            stamps[i] = BookStamp.of(fileNames[i]);
+        }
+        return stamps;
+    }
+
+    /**
+     * Saves a dictionary, stamping its books as they are now.
+     *
+     * @param dictionary The dictionary to save.
+     * @param snapshot   The snapshot file to write.
+     * @throws IOException if a book or the snapshot cannot be accessed.
+     */
+    public static void save(Dictionary dictionary, Path snapshot) throws IOException
+    {
+        save(dictionary, snapshot, stamp(dictionary.getFileNames()));
+    }
+
+    /**
+     * Saves a dictionary with the stamps its books had when it was built.
+     * The snapshot is written to a temporary file and then moved into place, so a reader never sees half of it.
+     *
+     * @param dictionary The dictionary to save.
+     * @param snapshot   The snapshot file to write.
+     * @param stamps     The stamps of the books of the dictionary, in order.
+     * @throws IOException if the snapshot cannot be written or would be larger than 2 GB.
+     */
+    public static void save(Dictionary dictionary, Path snapshot, BookStamp[] stamps) throws IOException
+    {
+        BloomFilter bloomFilter = dictionary.getBloomFilter();
+        if (!(bloomFilter.getHashStrategy() instanceof Murmur3))
+        {
+            throw new IllegalArgumentException("only dictionaries hashed with Murmur3 can be saved");
+        }
+        if (stamps.length != dictionary.getFileNames().length)
+        {
+            throw new IllegalArgumentException("expected a stamp for each of the " + dictionary.getFileNames().length + " books");
+        }
+        LongBuffer bits = bloomFilter.getBits();
+        WordIndex wordIndex = dictionary.getWordIndex();
+        IntBuffer offsets = wordIndex != null ? wordIndex.getOffsets() : IntBuffer.allocate(0);
+        ByteBuffer words = wordIndex != null ? wordIndex.getWords() : ByteBuffer.allocate(0);
+        long total = HEADER_BYTES + (long) BOOK_BYTES * stamps.length + 8L * bits.limit() + 4L * offsets.limit() + words.limit();
+        if (total > Integer.MAX_VALUE)
+        {
+            throw new IOException("snapshot of " + total + " bytes is too large to map");
+        }
+
+        Path directory = snapshot.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, snapshot.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(stamps.length);
+                out.writeInt(bloomFilter.getSize());
+                out.writeInt(bloomFilter.getNumHashFunctions());
+                out.writeInt(bits.limit());
+                out.writeInt(wordIndex != null ? wordIndex.size() : -1);
+                out.writeInt(words.limit());
+                out.writeLong(((Murmur3) bloomFilter.getHashStrategy()).getSeed());
+                for (BookStamp stamp : stamps)
+                {
+                    out.writeLong(stamp.size);
+                    out.writeLong(stamp.modified);
+                    out.writeLong(stamp.hash);
+                }
+                for (int i = 0; i < bits.limit(); i++)
+                {
+                    out.writeLong(bits.get(i));
+                }
+                for (int i = 0; i < offsets.limit(); i++)
+                {
+                    out.writeInt(offsets.get(i));
+                }
+                for (int i = 0; i < words.limit(); i++)
+                {
+                    out.write(words.get(i));
+                }
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Maps a snapshot back into a dictionary, if the snapshot is valid and its books are unchanged.
+     *
+     * @param snapshot  The snapshot file.
+     * @param withIndex True if challenges should be answered from the index, which the snapshot must then have;
+     *                  false to search the files on every challenge.
+     * @param fileNames The names of the book files, in the order they were saved.
+     * @return The dictionary, or null if the snapshot is missing, damaged or out of date and the books must be loaded.
+     */
+    public static Dictionary load(Path snapshot, boolean withIndex, String... fileNames)
+    {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ))
+        {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE)
+            {
+                return null;
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            return null; // No usable snapshot, so the books are loaded instead
+        }
+
+        int bookCount = map.getInt(8);
+        int bloomSize = map.getInt(12);
+        int numHashFunctions = map.getInt(16);
+        int bloomWords = map.getInt(20);
+        int indexWords = map.getInt(24);
+        int indexBytes = map.getInt(28);
+        long seed = map.getLong(32);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || bookCount != fileNames.length
+                || bloomSize <= 0 || numHashFunctions <= 0 || bloomWords != (bloomSize + 63) >>> 6
+                || indexWords < -1 || indexBytes < 0 || (withIndex && indexWords == -1))
+        {
+            return null;
+        }
+        long bitsAt = HEADER_BYTES + (long) BOOK_BYTES * bookCount;
+        long offsetsAt = bitsAt + 8L * bloomWords;
+        long wordsAt = offsetsAt + (indexWords == -1 ? 0 : 4L * (indexWords + 1));
+        if (wordsAt + indexBytes != map.capacity())
+        {
+            return null;
+        }
+
+        try {
+            for (int i = 0; i < bookCount; i++)
+            {
+                int at = HEADER_BYTES + BOOK_BYTES * i;
+                if (!new BookStamp(map.getLong(at), map.getLong(at + 8), map.getLong(at + 16)).matches(fileNames[i]))
+                {
+                    return null;
+                }
+            }
+        }
+        catch (IOException e) {
+            return null; // A book cannot be read; loading it will report why
+        }
+
+        LongBuffer bits = map.slice((int) bitsAt, 8 * bloomWords).asLongBuffer();
+        BloomFilter bloomFilter = new BloomFilter(bloomSize, numHashFunctions, new Murmur3(seed), bits);
+        WordIndex wordIndex = null;
+        if (withIndex)
+        {
+            IntBuffer offsets = map.slice((int) offsetsAt, 4 * (indexWords + 1)).asIntBuffer();
+            if (!isValid(offsets, indexBytes))
+            {
+                return null;
+            }
+            wordIndex = new WordIndex(map.slice((int) wordsAt, indexBytes), offsets);
+        }
+        return new Dictionary(fileNames.clone(), bloomFilter, wordIndex);
+    }
+
+    /**
+     * Checks that index offsets run from 0 to the end of the words without going back,
+     * so every word they delimit lies within the words.
+     */
+    private static boolean isValid(IntBuffer offsets, int indexBytes)
+    {
+        int last = offsets.limit() - 1;
+        if (offsets.get(0) != 0 || offsets.get(last) != indexBytes)
+        {
+            return false;
+        }
+        for (int i = 0; i < last; i++)
+        {
+            if (offsets.get(i) > offsets.get(i + 1))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the content of a file by chaining the Murmur3 hashes of its mapped regions.
+     */
+    private static long contentHash(Path path) throws IOException
+    {
+        long hash = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            for (long position = 0; position < size; position += REGION)
+            {
+                int length = (int) Math.min(REGION, size - position);
+                hash = new Murmur3(hash).hash(channel.map(FileChannel.MapMode.READ_ONLY, position, length), 0, length);
+            }
+        }
+        return hash;
+    }
+}
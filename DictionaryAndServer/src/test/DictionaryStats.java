@@ -0,0 +1,140 @@
+package test;
+
+/**
+ * The DictionaryStats class is a snapshot of how the queries and challenges of one or more dictionaries were answered:
+ * by the cache of existing words, by the cache of missing words, or by the Bloom filter, and how long challenges took.
+ * Snapshots of several dictionaries can be merged into one.
+ */
+public class DictionaryStats
+{
+    private final CacheStats wordsExists = new CacheStats(); // Statistics of the caches of existing words
+    private final CacheStats wordsNotExists = new CacheStats(); // Statistics of the caches of missing words
+    private long bloomPositives; // Queries the Bloom filter answered with true
+    private long bloomNegatives; // Queries the Bloom filter answered with false
+    private long diskChallenges; // Challenges answered by searching the book files
+    private final LatencyHistogram challengeLatency = new LatencyHistogram(); // Durations of all challenges
+
+    /**
+     * Constructor to create empty statistics, to merge others into.
+     */
+    public DictionaryStats()
+    {
+    }
+
+    /**
+     * Constructor to create a snapshot of the statistics of a dictionary.
+     *
+     * @param wordsExists      The statistics of the cache of existing words.
+     * @param wordsNotExists   The statistics of the cache of missing words.
+     * @param bloomPositives   The number of queries the Bloom filter answered with true.
+     * @param bloomNegatives   The number of queries the Bloom filter answered with false.
+     * @param diskChallenges   The number of challenges answered by searching the book files.
+     * @param challengeLatency The durations of all challenges.
+     */
+    public DictionaryStats(CacheStats wordsExists, CacheStats wordsNotExists, long bloomPositives, long bloomNegatives,
+                           long diskChallenges, LatencyHistogram challengeLatency)
+    {
+        this.wordsExists.merge(wordsExists);
+        this.wordsNotExists.merge(wordsNotExists);
+        this.bloomPositives = bloomPositives;
+        this.bloomNegatives = bloomNegatives;
+        this.diskChallenges = diskChallenges;
+        this.challengeLatency.merge(challengeLatency);
+    }
+
+    /**
+     * Adds the statistics of another snapshot to this one.
+     *
+     * @param other The statistics to add.
+     * @return This snapshot.
+     */
+    public DictionaryStats merge(DictionaryStats other)
+    {
+        wordsExists.merge(other.wordsExists);
+        wordsNotExists.merge(other.wordsNotExists);
+        bloomPositives += other.bloomPositives;
+        bloomNegatives += other.bloomNegatives;
+        diskChallenges += other.diskChallenges;
+        challengeLatency.merge(other.challengeLatency);
+        return this;
+    }
+
+    /**
+     * Gets the statistics of the cache of existing words.
+     *
+     * @return The cache statistics.
+     */
+    public CacheStats getWordsExists()
+    {
+        return wordsExists;
+    }
+
+    /**
+     * Gets the statistics of the cache of missing words.
+     *
+     * @return The cache statistics.
+     */
+    public CacheStats getWordsNotExists()
+    {
+        return wordsNotExists;
+    }
+
+    /**
+     * Gets the number of queries the Bloom filter answered with true.
+     *
+     * @return The number of Bloom filter positives.
+     */
+    public long getBloomPositives()
+    {
+        return bloomPositives;
+    }
+
+    /**
+     * Gets the number of queries the Bloom filter answered with false.
+     *
+     * @return The number of Bloom filter negatives.
+     */
+    public long getBloomNegatives()
+    {
+        return bloomNegatives;
+    }
+
+    /**
+     * Gets the number of challenges answered by searching the book files.
+     *
+     * @return The number of challenges that read the disk.
+     */
+    public long getDiskChallenges()
+    {
+        return diskChallenges;
+    }
+
+    /**
+     * Gets the durations of all challenges.
+     *
+     * @return The challenge latency histogram.
+     */
+    public LatencyHistogram getChallengeLatency()
+    {
+        return challengeLatency;
+    }
+
+    /**
+     * Formats the statistics on one line as name=value pairs separated by ';'.
+     *
+     * @return The formatted statistics.
+     */
+    @Override
+    public String toString()
+    {
+        return "existsHits=" + wordsExists.getHits() + ";existsMisses=" + wordsExists.getMisses()
+                + ";existsEvictions=" + wordsExists.getEvictions()
+                + ";notExistsHits=" + wordsNotExists.getHits() + ";notExistsMisses=" + wordsNotExists.getMisses()
+                + ";notExistsEvictions=" + wordsNotExists.getEvictions()
+                + ";bloomPositives=" + bloomPositives + ";bloomNegatives=" + bloomNegatives
+                + ";challenges=" + challengeLatency.getCount() + ";diskChallenges=" + diskChallenges
+                + ";challengeP50Micros=" + challengeLatency.getPercentile(50) / 1000
+                + ";challengeP99Micros=" + challengeLatency.getPercentile(99) / 1000
+                + ";challengeMaxMicros=" + challengeLatency.getMax() / 1000;
+    }
+}
@@ -0,0 +1,242 @@
+package test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The FingerprintCache class is a cache of words identified by their 64-bit hash instead of their characters.
+ * It is a set-associative table of primitive arrays: a fingerprint may only live in the WAYS entries of its set,
+ * and a full set evicts its least frequently used entry. Access frequencies are int counters that are halved
+ * periodically, so words that were popular long ago can be evicted.
+ * Admission follows TinyLFU: every hit and every add is counted in a CountMinSketch of recent accesses, cached or
+ * not, and a word only replaces the least frequently used entry of a full set if the sketch says it is used more
+ * often than that entry. A burst of one-off words therefore cannot flush the hot words, while a word that keeps
+ * missing soon gets in.
+ * Queries neither lock nor allocate; adds lock one stripe of sets. Two words with the same 64-bit hash are
+ * treated as the same word, which is far less likely than a false positive of the Bloom filter behind the cache.
+ */
+public class FingerprintCache
+{
+    private static final int WAYS = 8; // Entries per set
+    private static final int STRIPES = 64; // Most locks for changes
+    private static final int MAX_COUNT = 1 << 20; // Highest access frequency counted
+    private static final long EMPTY = 0; // Key of a free entry
+
+    private final AtomicLongArray keys; // Fingerprints of the cached words, EMPTY for a free entry
+    private final AtomicIntegerArray counts; // Access frequencies of the entries
+    private final int sets; // Number of sets
+    private final ReentrantLock[] locks; // Lock of each stripe; set s belongs to stripe s % locks.length
+    private final int[] additions; // Adds to each stripe since its frequencies were last halved
+    private final int agingPeriod; // Adds to a stripe, admitted or not, after which its frequencies are halved
+    private final CacheStats stats = new CacheStats(); // Hits, misses and evictions of the cache
+    private final CountMinSketch sketch; // Recent accesses of words, cached or not, for admission
+
+    /**
+     * Constructor to create a FingerprintCache.
+     *
+     * @param size The maximum number of words in the cache, rounded up to a multiple of WAYS.
+     */
+    public FingerprintCache(int size)
+    {
+        if (size <= 0)
+        {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        this.sets = (size + WAYS - 1) / WAYS;
+        this.keys = new AtomicLongArray(sets * WAYS);
+        this.counts = new AtomicIntegerArray(sets * WAYS);
+        int stripes = Math.min(sets, STRIPES);
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++)
+        {
+            locks[i] = new ReentrantLock();
+        }
+        this.additions = new int[stripes];
+        this.agingPeriod = 10 * WAYS * ((sets + stripes - 1) / stripes); // Ten adds per entry of the stripe
+        this.sketch = new CountMinSketch(sets * WAYS);
+    }
+
+    /**
+     * Queries the cache to check if a word is present, and counts an access to it if so.
+     *
+     * @param fingerprint The 64-bit hash of the word.
+     * @return True if the word is in the cache, false otherwise.
+     */
+    public boolean query(long fingerprint)
+    {
+        long key = keyOf(fingerprint);
+        int base = setOf(key) * WAYS;
+        for (int i = base; i < base + WAYS; i++)
+        {
+            if (keys.get(i) == key)
+            {
+                int count = counts.get(i);
+                if (count < MAX_COUNT)
+                {
+                    counts.lazySet(i, count + 1); // A lost update under contention only misses one access
+                }
+                sketch.increment(key);
+                stats.recordHit();
+                return true;
+            }
+        }
+        stats.recordMiss();
+        return false;
+    }
+
+    /**
+     * Adds a word to the cache after a miss. If its set is full, the word replaces the least frequently used word
+     * of the set only if it was accessed more often recently than that word; otherwise it is not cached.
+     *
+     * @param fingerprint The 64-bit hash of the word.
+     */
+    public void add(long fingerprint)
+    {
+        add(fingerprint, false);
+    }
+
+    /**
+     * Adds a word whose answer is known to be right, such as a challenge's, to the cache. If its set is full, the
+     * word replaces the least frequently used word of the set however rarely the word was accessed.
+     *
+     * @param fingerprint The 64-bit hash of the word.
+     */
+    public void admit(long fingerprint)
+    {
+        add(fingerprint, true);
+    }
+
+    /**
+     * Removes a word from the cache, such as one whose cached answer turned out to be wrong.
+     *
+     * @param fingerprint The 64-bit hash of the word.
+     */
+    public void remove(long fingerprint)
+    {
+        long key = keyOf(fingerprint);
+        int set = setOf(key);
+        int stripe = set % locks.length;
+        int base = set * WAYS;
+        locks[stripe].lock();
+        try {
+            for (int i = base; i < base + WAYS; i++)
+            {
+                if (keys.get(i) == key)
+                {
+                    keys.set(i, EMPTY);
+                    counts.set(i, 0);
+                    return;
+                }
+            }
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Adds a word to the cache, bypassing the admission check if forced.
+     */
+    private void add(long fingerprint, boolean force)
+    {
+        long key = keyOf(fingerprint);
+        int set = setOf(key);
+        int stripe = set % locks.length;
+        int base = set * WAYS;
+        sketch.increment(key);
+        locks[stripe].lock();
+        try {
+            if (++additions[stripe] >= agingPeriod)
+            {
+                additions[stripe] = 0;
+                age(stripe);
+            }
+            int victim = base;
+            for (int i = base; i < base + WAYS; i++)
+            {
+                long k = keys.get(i);
+                if (k == key)
+                {
+                    counts.set(i, Math.min(MAX_COUNT, counts.get(i) + 1));
+                    return;
+                }
+                if (keys.get(victim) != EMPTY && (k == EMPTY || counts.get(i) < counts.get(victim)))
+                {
+                    victim = i;
+                }
+            }
+            if (keys.get(victim) != EMPTY)
+            {
+                if (!force && sketch.frequency(key) <= sketch.frequency(keys.get(victim)))
+                {
+                    return; // Not admitted: the victim is used at least as often
+                }
+                stats.recordEviction();
+            }
+            counts.set(victim, 1);
+            keys.set(victim, key);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Halves the frequencies of the sets of a stripe. The caller holds the stripe's lock.
+     */
+    private void age(int stripe)
+    {
+        for (int set = stripe; set < sets; set += locks.length)
+        {
+            for (int i = set * WAYS; i < (set + 1) * WAYS; i++)
+            {
+                counts.set(i, counts.get(i) >> 1);
+            }
+        }
+    }
+
+    /**
+     * Maps a fingerprint to the key stored for it, keeping EMPTY free to mark unused entries.
+     */
+    private static long keyOf(long fingerprint)
+    {
+        return fingerprint == EMPTY ? 1 : fingerprint;
+    }
+
+    /**
+     * Picks the set of a key from its upper 32 bits, scaled to the number of sets without a division.
+     */
+    private int setOf(long key)
+    {
+        return (int) (((key >>> 32) * sets) >>> 32);
+    }
+
+    /**
+     * Gets the maximum number of words in the cache.
+     *
+     * @return The capacity of the cache.
+     */
+    public int getCapacity()
+    {
+        return sets * WAYS;
+    }
+
+    /**
+     * Gets the memory used by the entries of the cache and its admission sketch.
+     *
+     * @return The size of the keys, counters and sketch in bytes.
+     */
+    public long sizeInBytes()
+    {
+        return 12L * getCapacity() + sketch.sizeInBytes();
+    }
+
+    /**
+     * Gets the hit, miss and eviction counts of the cache.
+     *
+     * @return The statistics of the cache.
+     */
+    public CacheStats getStats()
+    {
+        return stats;
+    }
+}
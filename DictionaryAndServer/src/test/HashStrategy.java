@@ -0,0 +1,30 @@
+package test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The HashStrategy interface defines how a word is reduced to a 64-bit hash for the BloomFilter.
+ * The BloomFilter derives all of its bit indexes from this single value, so a word is hashed only once per lookup.
+ * Implementations must be stateless so one instance can be shared between filters and threads.
+ */
+public interface HashStrategy
+{
+    /**
+     * Hashes a word.
+     *
+     * @param word The word to hash.
+     * @return The 64-bit hash of the word.
+     */
+    long hash(CharSequence word);
+
+    /**
+     * Hashes a range of bytes holding the UTF-8 encoding of a word, without changing the buffer's position.
+     * Must return the same value as {@link #hash(CharSequence)} for the decoded word.
+     *
+     * @param buffer The buffer holding the word.
+     * @param offset The index of the first byte of the word.
+     * @param length The number of bytes in the word.
+     * @return The 64-bit hash of the word.
+     */
+    long hash(ByteBuffer buffer, int offset, int length);
+}
@@ -1,15 +1,21 @@
 package test;
 
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 
 /**
  * The IOSearcher class provides a method to search for a word in multiple files.
+ * Files are scanned with a WordTokenizer, comparing the word byte for byte with each word of the file.
+ * Files are read through a buffer that each thread reuses, rather than mapped, so repeated searches
+ * neither allocate nor leave mappings behind for the garbage collector.
  */
 public class IOSearcher {
+    private static final int BUFFER_SIZE = 1 << 16; // Bytes read from a file at once
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE)); // Read buffer of each thread
+
     /**
      * Searches for a word in the specified files.
      *
@@ -19,27 +25,20 @@ public class IOSearcher {
      */
     public static boolean search(String word,String...fileNames)
     {
-        Scanner myScanner = null;
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = BUFFER.get();
         for(String fileName : fileNames)
         {
             try{
-                myScanner=new Scanner(new BufferedReader(new FileReader(fileName)));
-                while(myScanner.hasNext())
+                if (WordTokenizer.forEachWord(fileName, buffer, (bytes, offset, length) -> !WordTokenizer.equals(bytes, offset, length, key)))
                 {
-                    if(word.equals(myScanner.next()))
-                    {
-                        return true;
-                    }
+                    return true;
                 }
-
-            } catch(FileNotFoundException e){
+            } catch(NoSuchFileException e){
                 throw new RuntimeException("File" + fileName + "is not found");
+            } catch(IOException e){
+                throw new RuntimeException("File" + fileName + " could not be read");
             }
-
-            finally{
-                if(myScanner != null)
-                myScanner.close();
-            }  
         }
         return false;
     }
@@ -7,18 +7,70 @@ import java.util.Map;
 /**
  * The LFU class implements the CacheReplacementPolicy interface using the Least Frequently Used (LFU) policy.
  * It tracks the frequency of access for each word and removes the least frequently used word when necessary.
+ * Words are kept in a list of frequency buckets, each holding its words from least to most recently used,
+ * so adding, touching and removing a word all take constant time. Among words with the lowest frequency,
+ * the least recently used one is removed.
+ * Optionally the frequencies are halved periodically, so words that were popular long ago can be evicted.
  */
 public class LFU implements CacheReplacementPolicy
 {
-    private Map<String,Integer> lfuMap; // Map to store words and their access frequencies
+    /**
+     * A word in the cache, linked into the bucket of its frequency.
+     */
+    private static class Node
+    {
+        final String word; // The cached word
+        Bucket bucket; // The bucket of the word's frequency
+        Node prev, next; // Neighbours in the bucket
+
+        Node(String word)
+        {
+            this.word = word;
+        }
+    }
+
+    /**
+     * The words that share one frequency, linked into the list of buckets in increasing frequency.
+     */
+    private static class Bucket
+    {
+        int freq; // Access frequency of the words in the bucket
+        Node head, tail; // Least and most recently used word in the bucket
+        Bucket prev, next; // Neighbouring buckets with lower and higher frequency
+
+        Bucket(int freq)
+        {
+            this.freq = freq;
+        }
+    }
+
+    private Map<String,Node> lfuMap; // Map to find the node of each word
+    private Bucket lowest; // Bucket with the lowest frequency, null when the cache is empty
+    private int agingPeriod; // Number of adds and touches between halvings of all frequencies, 0 for none
+    private int operations; // Adds and touches since the last halving
 
     /**
-     * Constructor to create an LFU cache replacement policy.
+     * Constructor to create an LFU cache replacement policy without aging.
      * Initializes the map to store words and their frequencies.
      */
     public LFU()
     {
+        this(0);
+    }
+
+    /**
+     * Constructor to create an LFU cache replacement policy that ages its frequencies.
+     *
+     * @param agingPeriod The number of adds and touches after which all frequencies are halved, or 0 to never age.
+     */
+    public LFU(int agingPeriod)
+    {
+        if (agingPeriod < 0)
+        {
+            throw new IllegalArgumentException("aging period must not be negative: " + agingPeriod);
+        }
         this.lfuMap = new HashMap<>();
+        this.agingPeriod = agingPeriod;
     }
 
     /**
@@ -29,36 +81,200 @@ public class LFU implements CacheReplacementPolicy
     @Override
     public void add(String word)
     {
-        lfuMap.put(word,lfuMap.getOrDefault(word, 0) + 1);
+        Node node = lfuMap.get(word);
+        if (node != null)
+        {
+            increment(node);
+        }
+        else
+        {
+            node = new Node(word);
+            if (lowest == null || lowest.freq != 1)
+            {
+                insertAfter(null, 1);
+            }
+            append(lowest, node);
+            lfuMap.put(word, node);
+        }
+        age();
+    }
+
+    /**
+     * Counts a cache hit as an access of the word.
+     *
+     * @param word The word that was found.
+     */
+    @Override
+    public void touch(String word)
+    {
+        Node node = lfuMap.get(word);
+        if (node != null)
+        {
+            increment(node);
+            age();
+        }
     }
 
     /**
      * Removes the least frequently used word from the cache.
      *
-     * @return The word that was removed from the cache.
+     * @return The word that was removed from the cache, or null if the cache is empty.
      */
     @Override
     public String remove()
     {
-    String victim = null;
-    int minFreq = Integer.MAX_VALUE;
+        if (lowest == null)
+        {
+            return null;
+        }
+        Node victim = lowest.head;
+        unlink(victim);
+        lfuMap.remove(victim.word);
+        return victim.word;
+    }
 
-    // Find the word with the minimum frequency
-    for (Map.Entry<String,Integer> entry : lfuMap.entrySet())
+    /**
+     * Moves a word to the bucket of the next frequency.
+     */
+    private void increment(Node node)
     {
-        if (entry.getValue() < minFreq)
+        Bucket bucket = node.bucket;
+        if (bucket.freq == Integer.MAX_VALUE) // Cannot count higher, only refresh its recency
         {
-            minFreq = entry.getValue();
-            victim = entry.getKey();
+            if (bucket.tail != node)
+            {
+                unlink(node);
+                append(bucket, node);
+            }
+            return;
         }
+        Bucket target = bucket.next;
+        if (target == null || target.freq != bucket.freq + 1)
+        {
+            target = insertAfter(bucket, bucket.freq + 1);
+        }
+        unlink(node);
+        append(target, node);
     }
 
-    // Remove the least frequently used word from the map
-    lfuMap.remove(victim);
-    return victim;
+    /**
+     * Creates a bucket after another one, or as the lowest bucket if there is none before it.
+     */
+    private Bucket insertAfter(Bucket before, int freq)
+    {
+        Bucket bucket = new Bucket(freq);
+        bucket.prev = before;
+        bucket.next = before != null ? before.next : lowest;
+        if (bucket.next != null)
+        {
+            bucket.next.prev = bucket;
+        }
+        if (before != null)
+        {
+            before.next = bucket;
+        }
+        else
+        {
+            lowest = bucket;
+        }
+        return bucket;
     }
-}
 
+    /**
+     * Adds a word as the most recently used of a bucket.
+     */
+    private static void append(Bucket bucket, Node node)
+    {
+        node.bucket = bucket;
+        node.prev = bucket.tail;
+        node.next = null;
+        if (bucket.tail != null)
+        {
+            bucket.tail.next = node;
+        }
+        else
+        {
+            bucket.head = node;
+        }
+        bucket.tail = node;
+    }
 
+    /**
+     * Removes a word from its bucket, and the bucket from the list if it becomes empty.
+     */
+    private void unlink(Node node)
+    {
+        Bucket bucket = node.bucket;
+        if (node.prev != null)
+        {
+            node.prev.next = node.next;
+        }
+        else
+        {
+            bucket.head = node.next;
+        }
+        if (node.next != null)
+        {
+            node.next.prev = node.prev;
+        }
+        else
+        {
+            bucket.tail = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        if (bucket.head == null)
+        {
+            removeBucket(bucket);
+        }
+    }
 
+    private void removeBucket(Bucket bucket)
+    {
+        if (bucket.prev != null)
+        {
+            bucket.prev.next = bucket.next;
+        }
+        else
+        {
+            lowest = bucket.next;
+        }
+        if (bucket.next != null)
+        {
+            bucket.next.prev = bucket.prev;
+        }
+    }
 
+    /**
+     * Halves all frequencies once every agingPeriod operations.
+     * Buckets whose halved frequencies become equal are merged, keeping the older bucket's words first.
+     * This is linear in the cache size, but runs only once per period.
+     */
+    private void age()
+    {
+        if (agingPeriod == 0 || ++operations < agingPeriod)
+        {
+            return;
+        }
+        operations = 0;
+        Bucket bucket = lowest;
+        while (bucket != null)
+        {
+            Bucket next = bucket.next;
+            bucket.freq = Math.max(1, bucket.freq >> 1);
+            Bucket prev = bucket.prev;
+            if (prev != null && prev.freq == bucket.freq)
+            {
+                for (Node node = bucket.head; node != null; node = node.next)
+                {
+                    node.bucket = prev;
+                }
+                prev.tail.next = bucket.head;
+                bucket.head.prev = prev.tail;
+                prev.tail = bucket.tail;
+                removeBucket(bucket);
+            }
+            bucket = next;
+        }
+    }
+}
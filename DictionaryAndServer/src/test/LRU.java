@@ -1,40 +1,62 @@
 package test;
-import java.util.HashMap;
-import java.util.Map;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
+/**
+ * The LRU class implements the CacheReplacementPolicy interface using the Least Recently Used (LRU) policy.
+ * Words are kept in a LinkedHashMap in access order, so adding, touching and removing a word all take constant time.
+ */
 public class LRU implements CacheReplacementPolicy
 {
-private Map<String,Integer> lruMap;
+    private LinkedHashMap<String,Boolean> lruMap; // Words from least to most recently used
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    /**
+     * Constructor to create an LRU cache replacement policy.
+     * Initializes the map in access order.
+     */
     public LRU()
     {
-        this.lruMap = new HashMap();
+        this.lruMap = new LinkedHashMap<>(16, 0.75f, true);
     }
 
+    /**
+     * Adds a word to the cache, or marks it as the most recently used if it is already there.
+     *
+     * @param word The word to add to the cache.
+     */
     @Override
     public void add(String word)
     {
-        lruMap.put(word,lruMap.getOrDefault(word, 0) + 1);
+        lruMap.put(word, Boolean.TRUE);
     }
+
+    /**
+     * Marks a word that was found in the cache as the most recently used.
+     *
+     * @param word The word that was found.
+     */
+    @Override
+    public void touch(String word)
+    {
+        lruMap.get(word);
+    }
+
+    /**
+     * Removes the least recently used word from the cache.
+     *
+     * @return The word that was removed from the cache, or null if the cache is empty.
+     */
     @Override
     public String remove()
     {
-        String victim = null;
-        int lastCall = Integer.MAX_VALUE;
-        for (Map.Entry<String,Integer> entry : lruMap.entrySet())
+        Iterator<String> it = lruMap.keySet().iterator();
+        if (!it.hasNext())
         {
-            if (entry.getValue() < lastCall)
-            {
-                victim = entry.getKey();
-                lastCall = entry.getValue();
-            }
+            return null;
         }
-        lruMap.remove(victim);
+        String victim = it.next();
+        it.remove();
         return victim;
     }
 }
-
-
-
@@ -0,0 +1,170 @@
+package test;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class records durations in nanoseconds into logarithmic buckets.
+ * Each power of two is split into four buckets, so a percentile is reported within 25% of the true value,
+ * with a fixed, small memory cost however many durations are recorded.
+ * Recording is safe from many threads at once.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 2; // Each power of two is split into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // Buckets per power of two
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1; // Buckets needed for any duration
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS]; // Number of durations in each bucket
+    private final LongAdder total = new LongAdder(); // Sum of all durations
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0); // Longest duration
+
+    /**
+     * Constructor to create an empty LatencyHistogram.
+     */
+    public LatencyHistogram()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos The duration in nanoseconds; negative durations count as 0.
+     */
+    public void record(long nanos)
+    {
+        nanos = Math.max(0, nanos);
+        counts[bucketOf(nanos)].increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Gets the number of recorded durations.
+     *
+     * @return The number of durations.
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for (LongAdder c : counts)
+        {
+            count += c.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the mean of the recorded durations.
+     *
+     * @return The mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getMean()
+    {
+        long count = getCount();
+        return count == 0 ? 0 : total.sum() / count;
+    }
+
+    /**
+     * Gets the longest recorded duration.
+     *
+     * @return The maximum in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Gets a percentile of the recorded durations, as the upper end of the bucket that holds it.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The percentile in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        if (count == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= rank)
+            {
+                return Math.min(getMax(), upperBound(i));
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Adds the durations of another histogram to this one.
+     *
+     * @param other The histogram to add.
+     * @return This histogram.
+     */
+    public LatencyHistogram merge(LatencyHistogram other)
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i].add(other.counts[i].sum());
+        }
+        total.add(other.total.sum());
+        max.accumulate(other.getMax());
+        return this;
+    }
+
+    /**
+     * Finds the bucket of a non-negative duration. Durations below SUB_BUCKETS have a bucket each.
+     */
+    private static int bucketOf(long nanos)
+    {
+        if (nanos < SUB_BUCKETS)
+        {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gets the largest duration that falls into a bucket.
+     */
+    private static long upperBound(int bucket)
+    {
+        if (bucket + 1 >= BUCKETS)
+        {
+            return Long.MAX_VALUE;
+        }
+        int next = bucket + 1;
+        if (next < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int exponent = next / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + next % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower - 1;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount() + ";meanMicros=" + getMean() / 1000 + ";p50Micros=" + getPercentile(50) / 1000
+                + ";p99Micros=" + getPercentile(99) / 1000 + ";maxMicros=" + getMax() / 1000;
+    }
+}
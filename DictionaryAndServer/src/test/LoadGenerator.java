@@ -0,0 +1,505 @@
+package test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The LoadGenerator class measures how much Q and C traffic a MyServer with a BookScrabbleHandler sustains on localhost,
+ * and with what latency. It writes generated books, starts the server, and runs client threads against it.
+ * Words are drawn from a Zipf distribution over a vocabulary in which every other word is in no book, and each request
+ * names a few consecutive books.
+ * With a target rate the load is open-loop and corrected for coordinated omission, as wrk2 does: requests are due on
+ * a fixed schedule and each client sends them when due, whether or not the earlier ones were answered, pipelined on
+ * its kept-alive connection or each on a connection of its own. A second thread per client reads the answers in
+ * the order the requests were sent. Latency is measured from when a request was due, not from when it was sent, so a
+ * stalled server is charged for the requests that queued behind it; the service latencies show how long each
+ * request took once it was sent.
+ * Without a rate each client sends its next request as soon as it has the answer.
+ * The first requests load the books into the server, so the warmup should be long enough to cover the loading.
+ * Options are given as name=value arguments; see DEFAULTS for their names and default values.
+ */
+public class LoadGenerator
+{
+    private static final String[][] DEFAULTS = {
+        {"clients", "8"}, // Client threads
+        {"rate", "0"}, // Requests per second of all clients together, 0 to send as fast as answers come
+        {"seconds", "10"}, // Length of the measurement
+        {"warmup", "2"}, // Seconds of load before the measurement
+        {"books", "4"}, // Books written and served
+        {"booksPerRequest", "2"}, // Books named by each request
+        {"vocabulary", "100000"}, // Distinct words in the books together
+        {"zipf", "1.0"}, // Exponent of the Zipf distribution of words, 0 for uniform
+        {"challenges", "0.1"}, // Fraction of requests that are C rather than Q
+        {"reuse", "true"}, // Whether a client keeps its connection for all its requests
+        {"mode", "THREAD_POOL"}, // MyServer.ExecutionMode of the server
+    };
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99}; // Percentiles reported
+    private static final int ANSWER_TIMEOUT = 10000; // Milliseconds to wait for an answer before counting an error
+    private static final Pending END = new Pending(0, 0, false, null, true); // Marks that a client sent its last request
+
+    /**
+     * Draws ranks from 0 to n - 1 with probability proportional to 1 / (rank + 1)^exponent.
+     */
+    private static class Zipf
+    {
+        private final double[] cdf; // Probability of each rank or a lower one
+
+        Zipf(int n, double exponent)
+        {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++)
+            {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++)
+            {
+                cdf[i] /= sum;
+            }
+        }
+
+        int next(Random random)
+        {
+            double u = random.nextDouble();
+            int low = 0;
+            int high = cdf.length - 1;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (cdf[mid] < u)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * The latencies of the requests of one kind.
+     */
+    private static class Latencies
+    {
+        final LatencyHistogram response = new LatencyHistogram(); // From when a request was due to its answer
+        final LatencyHistogram service = new LatencyHistogram(); // From when a request was sent to its answer
+    }
+
+    private final Map<String,String> options = new HashMap<>(); // Option values by name
+    private final Latencies queries = new Latencies(); // Latencies of Q requests
+    private final Latencies challenges = new Latencies(); // Latencies of C requests
+    private final LongAdder errors = new LongAdder(); // Requests that got no answer
+    private final LongAccumulator lastAnswer = new LongAccumulator(Math::max, Long.MIN_VALUE); // When the last answer came
+    private String[] books; // Paths of the generated books
+    private Zipf zipf; // Distribution of the word ranks
+    private int port; // Port of the server under load
+
+    /**
+     * Constructor to create a LoadGenerator.
+     *
+     * @param args The options, as name=value.
+     */
+    public LoadGenerator(String... args)
+    {
+        for (String[] option : DEFAULTS)
+        {
+            options.put(option[0], option[1]);
+        }
+        for (String arg : args)
+        {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !options.containsKey(arg.substring(0, eq)))
+            {
+                throw new IllegalArgumentException("unknown option: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        if (intOption("clients") <= 0 || intOption("books") <= 0 || intOption("vocabulary") <= 0
+                || intOption("booksPerRequest") <= 0 || intOption("booksPerRequest") > intOption("books"))
+        {
+            throw new IllegalArgumentException("clients, books and vocabulary must be positive, "
+                    + "and booksPerRequest between 1 and books: " + options);
+        }
+    }
+
+    private int intOption(String name)
+    {
+        return Integer.parseInt(options.get(name));
+    }
+
+    private double doubleOption(String name)
+    {
+        return Double.parseDouble(options.get(name));
+    }
+
+    /**
+     * Gets the word of a rank. Even ranks are words of the books, odd ranks are in none of them.
+     */
+    private static String word(int rank)
+    {
+        return (rank % 2 == 0 ? "word" : "none") + rank / 2;
+    }
+
+    /**
+     * Writes the books. The hundredth of the words used most often is in every book;
+     * each other word is in one book, ten words per line.
+     */
+    private void writeBooks(Path directory) throws IOException
+    {
+        int count = intOption("books");
+        int vocabulary = intOption("vocabulary");
+        books = new String[count];
+        for (int b = 0; b < count; b++)
+        {
+            Path book = directory.resolve("book" + b + ".txt");
+            try (Writer out = Files.newBufferedWriter(book, StandardCharsets.UTF_8))
+            {
+                int written = 0;
+                for (int w = 0; w < vocabulary; w++)
+                {
+                    if (w < vocabulary / 100 || w % count == b)
+                    {
+                        out.write(word(2 * w));
+                        out.write(++written % 10 == 0 ? '\n' : ' ');
+                    }
+                }
+            }
+            books[b] = book.toString();
+        }
+    }
+
+    /**
+     * A connection to the server, carrying one request or, when connections are reused, pipelined requests.
+     */
+    private static class Connection
+    {
+        final Socket socket; // Socket to the server
+        final PrintWriter out; // Writer of the requests
+        final BufferedReader in; // Reader of the answers
+        volatile boolean broken; // Set once the connection is closed or failed, so no more requests are sent on it
+
+        Connection(int port) throws IOException
+        {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(ANSWER_TIMEOUT);
+            out = new PrintWriter(socket.getOutputStream());
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        }
+
+        /**
+         * Sends a request without waiting for its answer, and closes the connection if it cannot be sent.
+         */
+        void send(CharSequence request)
+        {
+            out.println(request);
+            out.flush();
+            if (out.checkError())
+            {
+                close();
+            }
+        }
+
+        void close()
+        {
+            broken = true;
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    /**
+     * A request that was sent and waits for its answer.
+     */
+    private static class Pending
+    {
+        final long due; // When the request was due, from System.nanoTime
+        final long sent; // When the request was sent
+        final boolean challenge; // Whether the request is a C rather than a Q
+        final Connection connection; // The connection the answer comes on
+        final boolean last; // Whether the connection carries no further request
+
+        Pending(long due, long sent, boolean challenge, Connection connection, boolean last)
+        {
+            this.due = due;
+            this.sent = sent;
+            this.challenge = challenge;
+            this.connection = connection;
+            this.last = last;
+        }
+    }
+
+    /**
+     * Runs the load of one client until the given time, recording the requests due from the start of the measurement.
+     * The calling thread sends the requests; a second thread reads their answers in the order they were sent.
+     * With a rate, a request is sent when it is due whether or not the earlier ones were answered.
+     * Without one, the next request is due as soon as the previous one is answered.
+     *
+     * @param client       The number of the client.
+     * @param first        When the first request of all clients is due, from System.nanoTime.
+     * @param measureStart When the measurement starts.
+     * @param end          When the load stops.
+     */
+    private void runClient(int client, long first, long measureStart, long end)
+    {
+        Random random = new Random(client);
+        double rate = doubleOption("rate");
+        double challengeRatio = doubleOption("challenges");
+        int booksPerRequest = intOption("booksPerRequest");
+        boolean reuse = Boolean.parseBoolean(options.get("reuse"));
+        long interval = rate > 0 ? (long) (1e9 * intOption("clients") / rate) : 0;
+        long due = first + interval * client / intOption("clients"); // Clients are spread over one interval
+
+        BlockingQueue<Pending> pending = new LinkedBlockingQueue<>(); // Requests sent and not answered yet
+        Semaphore answered = interval == 0 ? new Semaphore(1) : null; // Without a rate, one request at a time
+        Thread reader = new Thread(() -> readAnswers(pending, answered, measureStart), "load-" + client + "-answers");
+        reader.start();
+        Connection connection = null;
+        StringBuilder request = new StringBuilder();
+        try {
+            while (true)
+            {
+                if (answered != null)
+                {
+                    answered.acquire();
+                }
+                long now = System.nanoTime();
+                if (interval == 0)
+                {
+                    due = now;
+                }
+                if (due >= end)
+                {
+                    break;
+                }
+                if (due > now)
+                {
+                    LockSupport.parkNanos(due - now);
+                    continue;
+                }
+
+                boolean challenge = random.nextDouble() < challengeRatio;
+                request.setLength(0);
+                request.append(challenge ? 'C' : 'Q');
+                int firstBook = random.nextInt(books.length);
+                for (int b = 0; b < booksPerRequest; b++)
+                {
+                    request.append(',').append(books[(firstBook + b) % books.length]);
+                }
+                request.append(',').append(word(zipf.next(random)));
+
+                long sent = System.nanoTime();
+                try {
+                    if (connection == null || connection.broken)
+                    {
+                        connection = new Connection(port);
+                    }
+                    pending.add(new Pending(due, sent, challenge, connection, !reuse)); // Before the answer can come
+                    connection.send(request);
+                }
+                catch (IOException e) {
+                    if (due >= measureStart)
+                    {
+                        errors.increment(); // Not connected, so there is no answer to wait for
+                    }
+                    if (answered != null)
+                    {
+                        answered.release();
+                    }
+                }
+                if (!reuse)
+                {
+                    connection = null; // Closed by the reader once answered
+                }
+                due += interval;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            pending.add(END);
+            try {
+                reader.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads the answers of a client's requests in the order they were sent, until END, and records their latencies.
+     * A request whose connection fails or times out is counted as an error, and its connection is closed.
+     *
+     * @param pending      The requests sent, followed by END once the client stops.
+     * @param answered     Released after each answer when the client waits for it, or null.
+     * @param measureStart When the measurement starts.
+     */
+    private void readAnswers(BlockingQueue<Pending> pending, Semaphore answered, long measureStart)
+    {
+        Connection connection = null;
+        try {
+            for (Pending request = pending.take(); request != END; request = pending.take())
+            {
+                connection = request.connection;
+                String answer = null;
+                if (!connection.broken)
+                {
+                    try {
+                        answer = connection.in.readLine();
+                    }
+                    catch (IOException e) {
+                        // Counted as an error below
+                    }
+                }
+                long done = System.nanoTime();
+                if (answer == null || request.last)
+                {
+                    connection.close();
+                }
+                if (request.due >= measureStart)
+                {
+                    if (answer == null)
+                    {
+                        errors.increment();
+                    }
+                    else
+                    {
+                        Latencies latencies = request.challenge ? challenges : queries;
+                        latencies.response.record(done - request.due);
+                        latencies.service.record(done - request.sent);
+                        lastAnswer.accumulate(done);
+                    }
+                }
+                if (answered != null)
+                {
+                    answered.release();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            if (connection != null)
+            {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the books, starts the server, applies the load and prints the results.
+     *
+     * @throws Exception if the books cannot be written or a client thread is interrupted.
+     */
+    public void run() throws Exception
+    {
+        zipf = new Zipf(2 * intOption("vocabulary"), doubleOption("zipf"));
+        Path directory = Files.createTempDirectory("books");
+        MyServer server = null;
+        try {
+            writeBooks(directory);
+            try (ServerSocket free = new ServerSocket(0))
+            {
+                port = free.getLocalPort();
+            }
+            int clients = intOption("clients");
+            server = new MyServer(port, new BookScrabbleHandler(Boolean.parseBoolean(options.get("reuse"))),
+                    MyServer.ExecutionMode.valueOf(options.get("mode")), Math.max(clients, MyServer.DEFAULT_MAX_CLIENTS));
+            server.start();
+
+            long first = System.nanoTime() + 100000000L; // Time for the client threads to start
+            long measureStart = first + (long) (doubleOption("warmup") * 1e9);
+            long end = measureStart + (long) (doubleOption("seconds") * 1e9);
+            Thread[] threads = new Thread[clients];
+            for (int c = 0; c < clients; c++)
+            {
+                int client = c;
+                threads[c] = new Thread(() -> runClient(client, first, measureStart, end), "load-" + c);
+                threads[c].start();
+            }
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+            // Answers to requests due before the end may come after it when the server falls behind
+            report((Math.max(end, lastAnswer.get()) - measureStart) / 1e9);
+        }
+        finally {
+            if (server != null)
+            {
+                server.close();
+            }
+            for (int b = 0; books != null && b < books.length; b++)
+            {
+                Files.deleteIfExists(Path.of(books[b]));
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private void report(double seconds)
+    {
+        long answered = queries.response.getCount() + challenges.response.getCount();
+        System.out.println("options: " + options);
+        System.out.println(String.format("throughput: %.0f requests/s (target %s), %d answered, %d errors",
+                answered / seconds, doubleOption("rate") > 0 ? options.get("rate") : "as fast as possible",
+                answered, errors.sum()));
+        StringBuilder header = new StringBuilder(String.format("%-20s %10s %10s", "micros", "count", "mean"));
+        for (double p : PERCENTILES)
+        {
+            header.append(String.format(" %10s", "p" + p));
+        }
+        System.out.println(header.append(String.format(" %10s", "max")));
+        LatencyHistogram allResponses = new LatencyHistogram().merge(queries.response).merge(challenges.response);
+        LatencyHistogram allServices = new LatencyHistogram().merge(queries.service).merge(challenges.service);
+        printRow("Q response", queries.response);
+        printRow("C response", challenges.response);
+        printRow("all response", allResponses);
+        printRow("all service", allServices);
+        System.out.println("server statistics: " + DictionaryManager.get().getStats(books));
+    }
+
+    private static void printRow(String name, LatencyHistogram histogram)
+    {
+        StringBuilder row = new StringBuilder(String.format("%-20s %10d %10.1f", name, histogram.getCount(),
+                histogram.getMean() / 1e3));
+        for (double p : PERCENTILES)
+        {
+            row.append(String.format(" %10.1f", histogram.getPercentile(p) / 1e3));
+        }
+        System.out.println(row.append(String.format(" %10.1f", histogram.getMax() / 1e3)));
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        new LoadGenerator(args).run();
+    }
+}
@@ -1,13 +1,29 @@
 package test;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MainTrain {
 	
@@ -75,6 +91,25 @@ public class MainTrain {
 	}
 	
 
+	// the books are written to a temporary directory, so a run leaves the module directory as it was
+	static File books=tempDirectory();
+	
+	public static File tempDirectory() {
+		try {
+			File dir=Files.createTempDirectory("books").toFile();
+			dir.deleteOnExit();
+			return dir;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public static String book(String name) {
+		File f=new File(books, name);
+		f.deleteOnExit();
+		return f.getPath();
+	}
+	
 	public static String[] writeFile(String name) {
 		Random r=new Random();
 		String txt[]=new String[10];
@@ -94,23 +129,24 @@ public class MainTrain {
 	}
 	
 	public static void testDM() {
-		String t1[]=writeFile("t1.txt");
-		String t2[]=writeFile("t2.txt");
-		String t3[]=writeFile("t3.txt");
+		String f1=book("t1.txt"), f2=book("t2.txt"), f3=book("t3.txt");
+		String t1[]=writeFile(f1);
+		String t2[]=writeFile(f2);
+		String t3[]=writeFile(f3);
 		
 		DictionaryManager dm=DictionaryManager.get();
 		
-		if(!dm.query("t1.txt","t2.txt",t2[4]))
+		if(!dm.query(f1,f2,t2[4]))
 			System.out.println("problem for Dictionary Manager query (-5)");
-		if(!dm.query("t1.txt","t2.txt",t1[9]))
+		if(!dm.query(f1,f2,t1[9]))
 			System.out.println("problem for Dictionary Manager query (-5)");
-		if(dm.query("t1.txt","t3.txt","2"+t3[2]))
+		if(dm.query(f1,f3,"2"+t3[2]))
 			System.out.println("problem for Dictionary Manager query (-5)");
-		if(dm.query("t2.txt","t3.txt","3"+t2[5]))
+		if(dm.query(f2,f3,"3"+t2[5]))
 			System.out.println("problem for Dictionary Manager query (-5)");
-		if(!dm.challenge("t1.txt","t2.txt","t3.txt",t3[2]))
+		if(!dm.challenge(f1,f2,f3,t3[2]))
 			System.out.println("problem for Dictionary Manager challenge (-5)");
-		if(dm.challenge("t2.txt","t3.txt","t1.txt","3"+t2[5]))
+		if(dm.challenge(f2,f3,f1,"3"+t2[5]))
 			System.out.println("problem for Dictionary Manager challenge (-5)");
 		
 		if(dm.getSize()!=3)
@@ -137,26 +173,925 @@ public class MainTrain {
 	}
 	
 	public static void testBSCH() {
-		String s1[]=writeFile("s1.txt");
-		String s2[]=writeFile("s2.txt");
+		String f1=book("s1.txt"), f2=book("s2.txt");
+		String s1[]=writeFile(f1);
+		String s2[]=writeFile(f2);
+		
+		Random r=new Random();
+		int port=6000+r.nextInt(1000);
+		MyServer s=new MyServer(port, new BookScrabbleHandler());
+		s.start();
+		runClient(port, "Q,"+f1+","+f2+","+s1[1], true);
+		runClient(port, "Q,"+f1+","+f2+","+s2[4], true);
+		runClient(port, "Q,"+f1+","+f2+",2"+s1[1], false);
+		runClient(port, "Q,"+f1+","+f2+",3"+s2[4], false);
+		runClient(port, "C,"+f1+","+f2+","+s1[9], true);
+		runClient(port, "C,"+f1+","+f2+",#"+s2[1], false);
+		s.close();
+	}
+	
+	public static String tempBook() {
+		try {
+			File f=File.createTempFile("book", ".txt", books);
+			f.deleteOnExit();
+			return f.getPath();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	// sends the text at once, then reads every answer line until the server closes the connection
+	public static List<String> talk(int port,String text) {
+		List<String> lines=new ArrayList<>();
+		try {
+			Socket server=new Socket("localhost",port);
+			server.setSoTimeout(5000);
+			PrintWriter out=new PrintWriter(server.getOutputStream());
+			BufferedReader in=new BufferedReader(new InputStreamReader(server.getInputStream()));
+			out.print(text);
+			out.flush();
+			server.shutdownOutput();
+			String line;
+			while((line=in.readLine())!=null)
+				lines.add(line);
+			server.close();
+		} catch (IOException e) {
+			System.out.println("your code ran into an IOException (-10)");
+		}
+		return lines;
+	}
+	
+	public static void testNio() {
+		String b=tempBook();
+		String w[]=writeFile(b);
+		
+		Random r=new Random();
+		int port=6000+r.nextInt(1000);
+		NioServer s=new NioServer(port, new BookScrabbleHandler());
+		s.start();
+		runClient(port, "Q,"+b+","+w[3], true);
+		runClient(port, "Q,"+b+",2"+w[3], false);
+		runClient(port, "C,"+b+","+w[7], true);
+		runClient(port, "C,"+b+",#"+w[7], false);
+		if(!talk(port, "Q,/nonexist,"+w[3]+"\n").isEmpty())
+			System.out.println("problem for the NIO server with an invalid request (-5)");
+		
+		try {
+			Socket idle=new Socket("localhost",port);
+			idle.setSoTimeout(2000);
+			Thread.sleep(100);
+			s.close();
+			try {
+				if(idle.getInputStream().read()!=-1)
+					System.out.println("the NIO server answered a connection it should have closed (-5)");
+			} catch (SocketTimeoutException e) {
+				System.out.println("the NIO server did not close an open connection on close (-5)");
+			} catch (IOException e) {
+				// reset rather than closed, which is fine
+			}
+			idle.close();
+		} catch (Exception e) {
+			System.out.println("some exception was thrown while closing the NIO server (-5)");
+		}
+		s.close();
+	}
+	
+	public static void testKeepAlive() {
+		String b=tempBook();
+		String w[]=writeFile(b);
+		
+		Random r=new Random();
+		int port=6000+r.nextInt(1000);
+		MyServer s=new MyServer(port, new BookScrabbleHandler(true));
+		s.setIdleTimeout(5000);
+		s.start();
+		try {
+			Socket server=new Socket("localhost",port);
+			server.setSoTimeout(5000);
+			PrintWriter out=new PrintWriter(server.getOutputStream());
+			BufferedReader in=new BufferedReader(new InputStreamReader(server.getInputStream()));
+			out.println("Q,"+b+","+w[0]);
+			out.flush();
+			String first=in.readLine();
+			out.println("C,"+b+",#"+w[0]);
+			out.flush();
+			String second=in.readLine();
+			if(!"true".equals(first) || !"false".equals(second))
+				System.out.println("problem for requests one after another on a kept alive connection (-10)");
+			server.close();
+		} catch (IOException e) {
+			System.out.println("your code ran into an IOException (-10)");
+		}
+		
+		List<String> res=talk(port, "Q,"+b+","+w[1]+"\nQ,"+b+",2"+w[1]+"\nC,"+b+","+w[2]+"\n");
+		if(!res.equals(List.of("true","false","true")))
+			System.out.println("problem for pipelined requests on a kept alive connection (-10)");
+		// the answers before a request that fails must still be sent
+		res=talk(port, "Q,"+b+","+w[3]+"\nQ,"+b+","+w[4]+"\nQ,/nonexist,"+w[3]+"\nQ,"+b+","+w[5]+"\n");
+		if(!res.equals(List.of("true","true")))
+			System.out.println("problem for pipelined requests before a missing book (-10)");
+		if(!talk(port, "Q,"+b+","+w[6]+"\n").equals(List.of("true")))
+			System.out.println("the server stopped answering after a request that failed (-10)");
+		s.close();
+	}
+	
+	public static void testBatch() {
+		String b1=tempBook();
+		String b2=tempBook();
+		String w1[]=writeFile(b1);
+		String w2[]=writeFile(b2);
 		
 		Random r=new Random();
 		int port=6000+r.nextInt(1000);
 		MyServer s=new MyServer(port, new BookScrabbleHandler());
 		s.start();
-		runClient(port, "Q,s1.txt,s2.txt,"+s1[1], true);
-		runClient(port, "Q,s1.txt,s2.txt,"+s2[4], true);
-		runClient(port, "Q,s1.txt,s2.txt,2"+s1[1], false);
-		runClient(port, "Q,s1.txt,s2.txt,3"+s2[4], false);
-		runClient(port, "C,s1.txt,s2.txt,"+s1[9], true);
-		runClient(port, "C,s1.txt,s2.txt,#"+s2[1], false);
+		List<String> res=talk(port, "B,"+b1+","+b2+","+w1[0]+"|2"+w1[0]+"|"+w2[8]+"|"+w1[0]+"|3"+w2[8]+"\n");
+		if(!res.equals(List.of("true|false|true|true|false")))
+			System.out.println("problem for a batch query, one answer per word in order (-10)");
+		res=talk(port, "B,"+b1+","+w1[1]+"\n");
+		if(!res.equals(List.of("true")))
+			System.out.println("problem for a batch query of a single word (-5)");
 		s.close();
+		
+		DictionaryManager dm=DictionaryManager.get();
+		boolean[] all=dm.queryAll(new String[]{b1,b2}, w1[3], "2"+w1[3], w2[7], w1[3], "3"+w2[7]);
+		if(!all[0] || !all[2] || !all[3] || all[1]!=dm.query(b1,b2,"2"+w1[3]) || all[4]!=dm.query(b1,b2,"3"+w2[7]))
+			System.out.println("a batch query answered other than single queries (-10)");
+	}
+	
+	public static void testStats() {
+		String b=tempBook();
+		String w[]=writeFile(b);
+		
+		Random r=new Random();
+		int port=6000+r.nextInt(1000);
+		MyServer s=new MyServer(port, new BookScrabbleHandler());
+		s.start();
+		runClient(port, "Q,"+b+","+w[0], true);
+		runClient(port, "C,"+b+","+w[1], true);
+		String format="[a-zA-Z0-9]+=\\d+(;[a-zA-Z0-9]+=\\d+)*";
+		List<String> res=talk(port, "S,"+b+"\n");
+		if(res.size()!=1 || !res.get(0).matches(format))
+			System.out.println("problem for the statistics format, name=value pairs separated by ';' (-5)");
+		else {
+			String stats=";"+res.get(0)+";";
+			if(!stats.contains(";challenges=1;") || stats.contains(";bloomPositives=0;") || !stats.contains(";existsHits="))
+				System.out.println("problem for the statistics of a book (-5)");
+		}
+		res=talk(port, "S\n");
+		if(res.size()!=1 || !res.get(0).matches(format))
+			System.out.println("problem for the statistics of all books (-5)");
+		s.close();
+	}
+	
+	public static void testSnapshot() {
+		String b=tempBook();
+		String w[]=writeFile(b);
+		try {
+			Path snap=Files.createTempFile("book", ".snapshot");
+			Dictionary d=new Dictionary(true, b);
+			DictionarySnapshot.save(d, snap);
+			Dictionary m=DictionarySnapshot.load(snap, true, b);
+			if(m==null)
+				System.out.println("problem loading a snapshot of an unchanged book (-10)");
+			else if(!m.query(w[2]) || !m.challenge(w[5]) || m.challenge("2"+w[5]))
+				System.out.println("problem for the dictionary loaded from a snapshot (-10)");
+			
+			// only touched: the content hash still matches
+			Path book=Paths.get(b);
+			long modified=Files.getLastModifiedTime(book).toMillis();
+			Files.setLastModifiedTime(book, FileTime.fromMillis(modified+2000));
+			if(DictionarySnapshot.load(snap, true, b)==null)
+				System.out.println("problem loading a snapshot of a touched but unchanged book (-5)");
+			
+			// the same size but another content
+			byte[] text=Files.readAllBytes(book);
+			text[0]=(byte)(text[0]=='1' ? '2' : '1');
+			Files.write(book, text);
+			Files.setLastModifiedTime(book, FileTime.fromMillis(modified+4000));
+			if(DictionarySnapshot.load(snap, true, b)!=null)
+				System.out.println("a snapshot was used after its book was edited (-10)");
+			
+			DictionarySnapshot.save(new Dictionary(true, b), snap);
+			byte[] saved=Files.readAllBytes(snap);
+			if(DictionarySnapshot.load(snap, true, b, b)!=null)
+				System.out.println("a snapshot was used for another number of books (-5)");
+			byte[] damaged=saved.clone();
+			damaged[0]^=1;
+			Files.write(snap, damaged);
+			if(DictionarySnapshot.load(snap, true, b)!=null)
+				System.out.println("a snapshot with a damaged header was used (-5)");
+			damaged=saved.clone();
+			damaged[23]^=1; // the number of Bloom filter words
+			Files.write(snap, damaged);
+			if(DictionarySnapshot.load(snap, true, b)!=null)
+				System.out.println("a snapshot with a damaged header was used (-5)");
+			int offsetsAt=40+24*1+8*ByteBuffer.wrap(saved).getInt(20); // after the header, the book and the Bloom filter
+			for(int[] offset : new int[][]{{1, 100000}, {2, 0}, {0, 1}, {ByteBuffer.wrap(saved).getInt(24), 0}}) {
+				damaged=saved.clone();
+				ByteBuffer.wrap(damaged).putInt(offsetsAt+4*offset[0], offset[1]);
+				Files.write(snap, damaged);
+				if(DictionarySnapshot.load(snap, true, b)!=null)
+					System.out.println("a snapshot with damaged index offsets was used (-10)");
+				if(DictionarySnapshot.load(snap, false, b)==null)
+					System.out.println("problem loading a snapshot without its index (-5)");
+			}
+			Files.write(snap, Arrays.copyOf(saved, saved.length-1));
+			if(DictionarySnapshot.load(snap, true, b)!=null)
+				System.out.println("a truncated snapshot was used (-5)");
+			Files.write(snap, saved);
+			if(DictionarySnapshot.load(snap, true, b)==null)
+				System.out.println("problem loading a snapshot of an edited book saved again (-5)");
+			Files.delete(snap);
+			
+			// the manager saves a snapshot of a book it loads
+			Path dir=Files.createTempDirectory("snapshots");
+			DictionaryManager dm=DictionaryManager.get();
+			dm.setSnapshotDirectory(dir.toString());
+			String b2=tempBook();
+			String w2[]=writeFile(b2);
+			if(!dm.query(b2,w2[0]))
+				System.out.println("problem for Dictionary Manager query with a snapshot directory (-5)");
+			dm.setSnapshotDirectory(null);
+			File[] snaps=dir.toFile().listFiles();
+			if(snaps.length!=1)
+				System.out.println("the Dictionary Manager did not save a snapshot of a loaded book (-5)");
+			for(File f : snaps)
+				f.delete();
+			Files.delete(dir);
+		} catch (IOException e) {
+			System.out.println("your code ran into an IOException (-10)");
+		}
+	}
+	
+	// a book's statistics are only reported while its dictionary is loaded, and a loaded one has answered a query
+	public static boolean isLoaded(String book) {
+		return !DictionaryManager.get().getStats(book).toString().equals(new DictionaryStats().toString());
+	}
+	
+	public static void testBudget() {
+		String b1=tempBook();
+		String b2=tempBook();
+		String b3=tempBook();
+		String w1[]=writeFile(b1);
+		String w2[]=writeFile(b2);
+		String w3[]=writeFile(b3);
+		
+		DictionaryManager dm=DictionaryManager.get();
+		dm.setMemoryBudget(Long.MAX_VALUE-1); // times the uses without dropping anything
+		long before=dm.getMemoryUsage();
+		dm.query(b1,w1[0]);
+		long one=dm.getMemoryUsage()-before;
+		dm.query(b2,w2[0]);
+		dm.query(b3,w3[0]);
+		dm.query(b1,w1[1]);
+		
+		dm.setMemoryBudget(2*one+one/2);
+		if(dm.getSize()!=2 || !isLoaded(b1) || isLoaded(b2) || !isLoaded(b3))
+			System.out.println("problem dropping the least recently used dictionaries over the memory budget (-10)");
+		if(!dm.query(b2,w2[1]) || dm.query(b2,"2"+w2[1]))
+			System.out.println("problem for Dictionary Manager query of a dropped book (-10)");
+		if(dm.getSize()!=2 || !isLoaded(b1) || !isLoaded(b2) || isLoaded(b3))
+			System.out.println("problem reloading a dropped dictionary within the memory budget (-10)");
+		if(dm.getMemoryUsage()>2*one+one/2)
+			System.out.println("the dictionaries use more memory than the budget (-5)");
+		dm.setMemoryBudget(Long.MAX_VALUE);
+	}
+	
+	public static void testCombine() {
+		String b1=tempBook();
+		String b2=tempBook();
+		String w1[]=writeFile(b1);
+		String w2[]=writeFile(b2);
+		
+		DictionaryManager dm=DictionaryManager.get();
+		dm.query(b1,w1[0]);
+		dm.query(b2,w2[0]);
+		long before=dm.getMemoryUsage();
+		dm.setCombineThreshold(2);
+		dm.query(b1,b2,w1[0]);
+		dm.query(b2,b1,w2[0]); // the same set, so the combined dictionary is built in the background
+		for(int i=0;i<50 && dm.getMemoryUsage()==before;i++)
+			try {Thread.sleep(100);} catch (InterruptedException e) {}
+		if(dm.getMemoryUsage()==before)
+			System.out.println("no combined dictionary was built for a book set queried often (-10)");
+		long combined=dm.getMemoryUsage();
+		
+		// the combined dictionary rules words out, and the books answer the words it may have
+		Dictionary both=new Dictionary(b1,b2), one=new Dictionary(b1), two=new Dictionary(b2);
+		for(int i=0;i<w1.length;i++) {
+			if(dm.query(b1,b2,w1[i])!=(dm.query(b1,w1[i]) || dm.query(b2,w1[i]))
+					|| dm.query(b2,b1,w2[i])!=(dm.query(b1,w2[i]) || dm.query(b2,w2[i]))) {
+				System.out.println("problem for the combined dictionary query of a word in the books (-10)");
+				break;
+			}
+			String none="2"+w1[i];
+			if(dm.query(b1,b2,none)!=(both.query(none) && (one.query(none) || two.query(none)))) {
+				System.out.println("problem for the combined dictionary query of a word in no book (-10)");
+				break;
+			}
+		}
+		String stats=dm.getStats(b1,b2).toString();
+		for(int i=0;i<100;i++)
+			if(!both.query("y"+i))
+				dm.query(b1,b2,"y"+i);
+		if(!dm.getStats(b1,b2).toString().equals(stats))
+			System.out.println("the books were queried for a word their combined dictionary rules out (-10)");
+		
+		// a word both the combined dictionary and a book wrongly have: a challenge corrects the book, and the set
+		BloomFilter bothBloom=both.getBloomFilter(), oneBloom=one.getBloomFilter();
+		String wrong=null;
+		for(int i=0;i<50000000 && wrong==null;i++) {
+			long hash=both.getHashStrategy().hash("x"+i);
+			if(oneBloom.containsHash(hash) && bothBloom.containsHash(hash))
+				wrong="x"+i;
+		}
+		if(wrong!=null) {
+			if(!dm.query(b1,b2,wrong) || !dm.query(b1,wrong))
+				System.out.println("problem for a query of a false positive of the Bloom filters (-5)");
+			if(dm.challenge(b1,b2,wrong))
+				System.out.println("problem for the challenge of a false positive of the Bloom filters (-10)");
+			if(dm.query(b1,wrong))
+				System.out.println("a book answered a query against the challenge that corrected it (-10)");
+			if(dm.query(b1,b2,wrong) || dm.query(b2,b1,wrong))
+				System.out.println("a combined dictionary answered a query against the challenge that corrected its book (-10)");
+		}
+		if(dm.getSize()<2)
+			System.out.println("a combined dictionary replaced the dictionaries of its books (-5)");
+		dm.setCombineThreshold(0);
+		if(dm.getMemoryUsage()>=combined)
+			System.out.println("problem dropping the combined dictionaries (-5)");
+	}
+	
+	public static void testHashes() {
+		// known answers of the x64 128-bit MurmurHash3, lower 64 bits, as other implementations give them
+		String words[]={"", "a", "hello", "hello world, this is!", "0123456789abcdef", "\u00e9t\u00e9", "\ud83d\ude00x"};
+		long seed0[]={0x0L, 0x85555565f6597889L, 0xcbd8a7b341bd9b02L, 0xcb8a77d52e709e7eL, 0x4be06d94cf4ad1a7L,
+				0x53bf5f6c9b9d9a14L, 0x1dadc58a230958deL};
+		long seed42[]={0xf02aa77dfa1b8523L, 0x28259ca4fdf626b0L, 0xc4b8b3c960af6f08L, 0x4e267c9b666a00d5L,
+				0x818ea26bed3cb2a4L, 0xd7470b9b41239723L, 0x053fc17dae8cd497L};
+		for(int i=0;i<words.length;i++) {
+			byte[] utf8=words[i].getBytes(StandardCharsets.UTF_8);
+			ByteBuffer buffer=ByteBuffer.allocate(utf8.length+3);
+			buffer.position(3);
+			buffer.put(utf8);
+			if(new Murmur3().hash(words[i])!=seed0[i] || new Murmur3(42).hash(words[i])!=seed42[i])
+				System.out.println("wrong Murmur3 hash of a word (-5)");
+			if(new Murmur3().hash(buffer,3,utf8.length)!=seed0[i] || new Murmur3(42).hash(buffer,3,utf8.length)!=seed42[i])
+				System.out.println("wrong Murmur3 hash of UTF-8 bytes (-5)");
+		}
+		
+		// enhanced double hashing: index = low half, step = high half, and the step grows by i after the i-th bit
+		HashStrategy fixed=new HashStrategy() {
+			public long hash(CharSequence word) { return word.length()==1 ? (7L<<32)|5 : 0xffffffffL; }
+			public long hash(ByteBuffer buffer, int offset, int length) { return 0; }
+		};
+		BloomFilter bf=new BloomFilter(100, 4, fixed);
+		bf.add("a");
+		if(!bf.toString().equals("0000010000001000000100000001"))
+			System.out.println("wrong bits set by double hashing (-5)");
+		bf=new BloomFilter(100, 1, fixed);
+		bf.add("ab"); // the low half is read as unsigned: 4294967295 % 100 = 95
+		if(bf.toString().length()!=96 || !bf.contains("cd") || bf.contains("a"))
+			System.out.println("wrong bits set by double hashing (-5)");
+	}
+	
+	public static void testBloomSizing() {
+		// m = -n ln(p) / (ln 2)^2 bits and k = (m / n) ln 2 hash functions
+		BloomFilter bf=BloomFilter.create(1000, 0.01);
+		if(bf.getSize()!=9586 || bf.getNumHashFunctions()!=7)
+			System.out.println("wrong size of a Bloom filter created for 1000 words at 1% (-5)");
+		if(BloomFilter.create(0, 0.5).getSize()!=64)
+			System.out.println("wrong size of a Bloom filter created for no words (-5)");
+		
+		bf=BloomFilter.create(10000, 0.01);
+		for(int i=0;i<10000;i++)
+			bf.add("word"+i);
+		boolean lost=false;
+		for(int i=0;i<10000;i++)
+			lost|=!bf.contains("word"+i);
+		if(lost)
+			System.out.println("a Bloom filter lost a word (-10)");
+		int falsePositives=0;
+		for(int i=0;i<100000;i++)
+			if(bf.contains("none"+i))
+				falsePositives++;
+		if(falsePositives>1500 || Math.abs(bf.getExpectedFpp()-0.01)>0.005)
+			System.out.println("the false positive rate is far from the target (-5)");
+		
+		// a Dictionary sizes its filter from the words of its books, for 0.1%
+		String b=tempBook();
+		try {
+			PrintWriter out=new PrintWriter(new FileWriter(b));
+			for(int i=0;i<20000;i++)
+				out.print("w"+i+(i%10==9 ? "\n" : " "));
+			out.close();
+		} catch (IOException e) {}
+		Dictionary d=new Dictionary(b);
+		if(d.getBloomExpectedFpp()>0.002)
+			System.out.println("the Dictionary Bloom filter is not sized for its books (-5)");
+	}
+	
+	public static void testConcurrentDM() {
+		String b1=tempBook();
+		String b2=tempBook();
+		String w1[]=writeFile(b1);
+		String w2[]=writeFile(b2);
+		String missing=book("missing.txt");
+		
+		DictionaryManager dm=DictionaryManager.get();
+		int size=dm.getSize();
+		AtomicInteger wrong=new AtomicInteger();
+		AtomicInteger failed=new AtomicInteger();
+		CountDownLatch go=new CountDownLatch(1);
+		Thread threads[]=new Thread[8];
+		for(int t=0;t<threads.length;t++) {
+			threads[t]=new Thread(()->{
+				try {go.await();} catch (InterruptedException e) {}
+				for(int i=0;i<w1.length;i++) {
+					if(!dm.query(b1,b2,w1[i]) || !dm.query(b2,b1,w2[i]) || !dm.challenge(b1,b2,w2[i])
+							|| dm.challenge(b1,b2,"2"+w1[i]))
+						wrong.incrementAndGet();
+				}
+				try {
+					dm.query(missing,w1[0]);
+				} catch (RuntimeException e) {
+					failed.incrementAndGet();
+				}
+			});
+			threads[t].start();
+		}
+		go.countDown();
+		for(Thread t : threads)
+			try {t.join();} catch (InterruptedException e) {}
+		if(wrong.get()!=0)
+			System.out.println("wrong answers from Dictionary Manager queries in several threads (-10)");
+		if(failed.get()!=threads.length)
+			System.out.println("a missing book did not fail the queries of every thread (-5)");
+		if(dm.getSize()!=size+2)
+			System.out.println("books queried by several threads were not loaded once each (-10)");
+		
+		// a failed load is forgotten, so the book loads once it exists
+		String w3[]=writeFile(missing);
+		try {
+			if(!dm.query(missing,w3[0]))
+				System.out.println("problem for Dictionary Manager query of a book that was missing (-5)");
+		} catch (RuntimeException e) {
+			System.out.println("a book that was missing cannot be loaded after it is written (-5)");
+		}
+	}
+	
+	// answers each line after the gate opens, counting how many clients it handles at the same time
+	public static class GateHandler implements ClientHandler{
+		AtomicInteger active=new AtomicInteger();
+		AtomicInteger most=new AtomicInteger();
+		AtomicInteger handled=new AtomicInteger();
+		CountDownLatch gate=new CountDownLatch(1);
+		@Override
+		public void handleClient(InputStream inFromclient, OutputStream outToClient) {
+			most.accumulateAndGet(active.incrementAndGet(), Math::max);
+			handled.incrementAndGet();
+			try {
+				BufferedReader in=new BufferedReader(new InputStreamReader(inFromclient));
+				PrintWriter out=new PrintWriter(outToClient);
+				String line=in.readLine();
+				gate.await();
+				out.println(line);
+				out.flush();
+			} catch (IOException | InterruptedException e) {
+			} finally {
+				active.decrementAndGet();
+			}
+		}
+		@Override
+		public void close() {}
+	}
+	
+	public static void testThreadPool() {
+		testMaxClients(MyServer.ExecutionMode.THREAD_POOL);
+		testMaxClients(MyServer.ExecutionMode.VIRTUAL_THREAD);
+	}
+	
+	public static void testMaxClients(MyServer.ExecutionMode mode) {
+		Random r=new Random();
+		int port=6000+r.nextInt(1000);
+		GateHandler h=new GateHandler();
+		MyServer s=new MyServer(port, h, mode, 2);
+		s.start();
+		List<Socket> clients=new ArrayList<>();
+		try {
+			for(int i=0;i<3;i++) {
+				Socket c=new Socket("localhost",port);
+				c.setSoTimeout(5000);
+				PrintWriter out=new PrintWriter(c.getOutputStream());
+				out.println("client"+i);
+				out.flush();
+				clients.add(c);
+			}
+			Thread.sleep(1000);
+			if(h.handled.get()!=2 || h.active.get()!=2)
+				System.out.println("the server did not handle exactly maxClients clients at the same time (-10)");
+			h.gate.countDown();
+			for(int i=0;i<3;i++) {
+				BufferedReader in=new BufferedReader(new InputStreamReader(clients.get(i).getInputStream()));
+				if(!("client"+i).equals(in.readLine()))
+					System.out.println("a client waiting for a free slot did not get its answer (-10)");
+			}
+			if(h.handled.get()!=3 || h.most.get()!=2)
+				System.out.println("the server went over maxClients clients at the same time (-10)");
+		} catch (Exception e) {
+			System.out.println("some exception was thrown while testing the "+mode+" server (-10)");
+		}
+		for(Socket c : clients)
+			try {c.close();} catch (IOException e) {}
+		s.close();
+	}
+	
+	public static void testKeepAliveClients() {
+		String b=tempBook();
+		String w[]=writeFile(b);
+		
+		Random r=new Random();
+		int port=6000+r.nextInt(1000);
+		MyServer s=new MyServer(port, new BookScrabbleHandler(true));
+		s.start();
+		try {
+			Socket first=new Socket("localhost",port);
+			Socket second=new Socket("localhost",port);
+			first.setSoTimeout(3000);
+			second.setSoTimeout(3000);
+			PrintWriter out1=new PrintWriter(first.getOutputStream());
+			PrintWriter out2=new PrintWriter(second.getOutputStream());
+			BufferedReader in1=new BufferedReader(new InputStreamReader(first.getInputStream()));
+			BufferedReader in2=new BufferedReader(new InputStreamReader(second.getInputStream()));
+			out1.println("Q,"+b+","+w[0]);
+			out1.flush();
+			String a1=in1.readLine();
+			// the first client now stays idle with its connection open
+			out2.println("Q,"+b+","+w[1]);
+			out2.flush();
+			String a2=in2.readLine();
+			out1.println("C,"+b+",#"+w[0]);
+			out1.flush();
+			String a3=in1.readLine();
+			if(!"true".equals(a1) || !"true".equals(a2) || !"false".equals(a3))
+				System.out.println("problem for two kept alive clients at the same time (-10)");
+			first.close();
+			second.close();
+		} catch (SocketTimeoutException e) {
+			System.out.println("an idle kept alive client blocked another client (-10)");
+		} catch (IOException e) {
+			System.out.println("your code ran into an IOException (-10)");
+		}
+		s.close();
+	}
+	
+	public static void testIndex() {
+		// the index is sorted by UTF-8 bytes and stores each word once
+		List<byte[]> words=new ArrayList<>();
+		for(String w : new String[]{"dog","cat","do","dogs","cat","\u00e9t\u00e9","zebra","dog","a"})
+			words.add(w.getBytes(StandardCharsets.UTF_8));
+		WordIndex index=new WordIndex(words);
+		if(index.size()!=7)
+			System.out.println("the index does not store each word once (-5)");
+		for(String w : new String[]{"dog","cat","do","dogs","\u00e9t\u00e9","zebra","a"})
+			if(!index.contains(w))
+				System.out.println("the index lost a word (-10)");
+		for(String w : new String[]{"d","og","dogss","ca","cats","\u00e9t","b","zebras",""})
+			if(index.contains(w))
+				System.out.println("the index found a word it does not have (-10)");
+		if(new WordIndex(new ArrayList<>()).contains("a"))
+			System.out.println("an empty index found a word (-5)");
+		
+		// challenges from the index agree with searching the book, whatever separates the words
+		String b=tempBook();
+		try {
+			PrintWriter out=new PrintWriter(new FileWriter(b));
+			out.print("  the\tquick\r\nbrown   fox,\n\n jumps\u000bover the lazy dog\t");
+			out.close();
+		} catch (IOException e) {}
+		String probes[]={"the","quick","brown","fox,","fox","jumps","over","lazy","dog","do","dogs","ove","quic","brown fox"};
+		Dictionary indexed=new Dictionary(true, b);
+		Dictionary searched=new Dictionary(false, b);
+		for(String w : probes) {
+			boolean expected=IOSearcher.search(w, b);
+			if(indexed.challenge(w)!=expected || searched.challenge(w)!=expected)
+				System.out.println("a challenge from the index disagrees with searching the book (-10)");
+		}
+		if(!indexed.challenge("lazy") || indexed.challenge("azy"))
+			System.out.println("wrong answer of a challenge (-5)");
+	}
+	
+	public static List<String> words(String file, long from, long to) {
+		List<String> words=new ArrayList<>();
+		try {
+			WordTokenizer.forEachWord(file, from, to, (buffer, offset, length) -> {
+				byte[] word=new byte[length];
+				buffer.get(offset, word);
+				return words.add(new String(word, StandardCharsets.UTF_8));
+			});
+		} catch (IOException e) {
+			System.out.println("your code ran into an IOException (-10)");
+		}
+		return words;
+	}
+	
+	public static void testTokenizer() {
+		// every ASCII whitespace separates words, and a word is longer than the tail mapped past a range
+		StringBuilder longWord=new StringBuilder();
+		for(int i=0;i<10000;i++)
+			longWord.append((char)('a'+i%26));
+		String text="  alpha\tbeta\r\n\r\ngamma  \u000b\u00e9t\u00e9 "+longWord+" delta\f\u001cx,y\n";
+		List<String> expected=List.of("alpha","beta","gamma","\u00e9t\u00e9",longWord.toString(),"delta","x,y");
+		String b=tempBook();
+		try {
+			Files.write(Paths.get(b), text.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {}
+		long size=new File(b).length();
+		
+		try {
+			if(!words(b, 0, Long.MAX_VALUE).equals(expected) || WordTokenizer.countWords(b)!=expected.size())
+				System.out.println("wrong words of a file (-10)");
+			
+			// adjacent ranges visit every word exactly once, wherever they are split
+			for(long at=0;at<=size;at+=(at<40 || at>size-20 ? 1 : 37)) {
+				List<String> both=words(b, 0, at);
+				both.addAll(words(b, at, size));
+				if(!both.equals(expected) || WordTokenizer.countWords(b, 0, at)+WordTokenizer.countWords(b, at, size)!=expected.size()) {
+					System.out.println("adjacent ranges did not visit every word once (-10)");
+					break;
+				}
+			}
+			
+			// reading through a small buffer finds words across reads and words longer than the buffer
+			for(int capacity : new int[]{1, 16, 4096, 1<<16}) {
+				List<String> read=new ArrayList<>();
+				WordTokenizer.forEachWord(b, ByteBuffer.allocate(capacity), (buffer, offset, length) -> {
+					byte[] word=new byte[length];
+					buffer.get(offset, word);
+					return read.add(new String(word, StandardCharsets.UTF_8));
+				});
+				if(!read.equals(expected))
+					System.out.println("wrong words of a file read through a buffer (-10)");
+			}
+			
+			// the visitor stops the walk
+			int[] visited={0};
+			if(!WordTokenizer.forEachWord(b, (buffer, offset, length) -> ++visited[0]<2) || visited[0]!=2)
+				System.out.println("the walk did not stop when asked (-5)");
+			if(!IOSearcher.search(longWord.toString(), b) || !IOSearcher.search("\u00e9t\u00e9", b) || IOSearcher.search("x", b))
+				System.out.println("wrong answer of a search (-5)");
+		} catch (IOException e) {
+			System.out.println("your code ran into an IOException (-10)");
+		}
+	}
+	
+	public static void testChunks() {
+		// a book of three chunks loaded in parallel: a word across the first seam, and a word starting at the second
+		long chunk=8L<<20;
+		String b=tempBook();
+		int fillers=0;
+		try (OutputStream out=new BufferedOutputStream(Files.newOutputStream(Paths.get(b)))) {
+			long position=0;
+			for(String word : new String[]{"straddling","seam","last"}) {
+				long at=word.equals("straddling") ? chunk-4 : word.equals("seam") ? 2*chunk : 2*chunk+1000;
+				while(position+9<=at) {
+					out.write(String.format("f%07d ", fillers++).getBytes(StandardCharsets.US_ASCII));
+					position+=9;
+				}
+				for(;position<at;position++)
+					out.write(' ');
+				out.write((word+(word.equals("last") ? "" : " ")).getBytes(StandardCharsets.US_ASCII));
+				position+=word.length()+1;
+			}
+		} catch (IOException e) {
+			System.out.println("your code ran into an IOException (-10)");
+		}
+		
+		for(boolean index : new boolean[]{true, false}) {
+			Dictionary d=new Dictionary(index, b);
+			for(String w : new String[]{"straddling","seam","last","f0000000",String.format("f%07d", fillers-1)})
+				if(!d.query(w) || !d.challenge(w))
+					System.out.println("a word was lost where the book was split (-10)");
+			for(String w : new String[]{"stra","ddling","straddl","addling","sea","eam","las"})
+				if(d.challenge(w))
+					System.out.println("a part of a word split between chunks was loaded as a word (-10)");
+			boolean lost=false;
+			for(int i=0;i<fillers;i+=101)
+				lost|=!d.query(String.format("f%07d", i));
+			if(lost)
+				System.out.println("a word of the book was lost by parallel loading (-10)");
+			if(d.getBloomExpectedFpp()>0.002)
+				System.out.println("the words of the chunks were not counted once each (-5)");
+		}
+		new File(b).delete();
+	}
+	
+	public static String removeAll(CacheReplacementPolicy crp) {
+		StringBuilder order=new StringBuilder();
+		for(String w=crp.remove();w!=null;w=crp.remove())
+			order.append(w);
+		return order.toString();
+	}
+	
+	public static void testLRU() {
+		// the least recently added or touched word goes first, and adding a word again refreshes it
+		CacheReplacementPolicy lru=new LRU();
+		lru.add("a"); lru.add("b"); lru.add("c"); lru.add("d");
+		lru.touch("a");
+		lru.add("c");
+		lru.touch("x");
+		if(!removeAll(lru).equals("bdac"))
+			System.out.println("wrong eviction order of LRU (-10)");
+		if(lru.remove()!=null)
+			System.out.println("an empty LRU removed a word (-5)");
+		
+		// a hit in the cache manager counts as a use
+		CacheManager cm=new CacheManager(3, new LRU());
+		cm.add("a"); cm.add("b"); cm.add("c");
+		if(!cm.query("a") || cm.query("x"))
+			System.out.println("wrong answer of the cache manager (-5)");
+		cm.add("d");
+		if(cm.query("b") || !cm.query("a") || !cm.query("c") || !cm.query("d"))
+			System.out.println("the cache manager did not evict the least recently used word (-10)");
+		cm.add("d"); // already cached, nothing is evicted
+		if(!cm.query("a"))
+			System.out.println("adding a cached word evicted another (-5)");
+		if(cm.getStats().getEvictions()!=1 || cm.getStats().getHits()!=5 || cm.getStats().getMisses()!=2)
+			System.out.println("wrong statistics of the cache manager (-5)");
+	}
+	
+	public static void testLFU() {
+		// the least frequently used word goes first, and the least recently used among equally frequent ones
+		CacheReplacementPolicy lfu=new LFU();
+		lfu.add("a"); lfu.add("b"); lfu.add("c"); lfu.add("d");
+		lfu.touch("a"); lfu.touch("a");
+		lfu.touch("c");
+		lfu.add("b");
+		lfu.touch("x");
+		if(!removeAll(lfu).equals("dcba"))
+			System.out.println("wrong eviction order of LFU (-10)");
+		if(lfu.remove()!=null)
+			System.out.println("an empty LFU removed a word (-5)");
+		lfu.add("e"); lfu.add("f"); lfu.touch("e"); lfu.add("g");
+		if(!lfu.remove().equals("f") || !lfu.remove().equals("g"))
+			System.out.println("wrong eviction order of LFU after it was emptied (-10)");
+		
+		// aging halves the frequencies, so a word popular long ago goes before a word popular lately
+		for(int period : new int[]{0, 8}) {
+			lfu=new LFU(period);
+			lfu.add("old");
+			for(int i=0;i<7;i++)
+				lfu.touch("old");
+			lfu.add("new");
+			for(int i=0;i<5;i++)
+				lfu.touch("new");
+			lfu.add("y"); lfu.add("z");
+			if(!removeAll(lfu).equals(period==0 ? "yznewold" : "yzoldnew"))
+				System.out.println("wrong eviction order of LFU with aging (-10)");
+		}
+		
+		// a hit in the cache manager counts as a use
+		CacheManager cm=new CacheManager(3, new LFU());
+		cm.add("a"); cm.add("b"); cm.add("c");
+		cm.query("a"); cm.query("c");
+		cm.add("d");
+		if(cm.query("b") || !cm.query("a") || !cm.query("c") || !cm.query("d"))
+			System.out.println("the cache manager did not evict the least frequently used word (-10)");
+		cm.add("e");
+		if(cm.query("d") || !cm.query("e"))
+			System.out.println("the cache manager did not evict the least frequently used word (-10)");
+	}
+	
+	public static void testAdmission() {
+		// one set of 8 hot words, then a burst of words used once: none of them gets in
+		FingerprintCache cache=new FingerprintCache(8);
+		for(long hot=1;hot<=8;hot++) {
+			cache.add(hot);
+			for(int i=0;i<3;i++)
+				cache.query(hot);
+		}
+		for(long once=100;once<160;once++)
+			if(!cache.query(once))
+				cache.add(once);
+		boolean flushed=false;
+		for(long hot=1;hot<=8;hot++)
+			flushed|=!cache.query(hot);
+		if(flushed || cache.getStats().getEvictions()!=0)
+			System.out.println("a burst of words used once flushed the hot words of the cache (-10)");
+		
+		// a word that keeps missing gets in
+		boolean admitted=false;
+		for(int i=0;i<10 && !admitted;i++)
+			if(!(admitted=cache.query(1000)))
+				cache.add(1000);
+		if(!admitted || cache.getStats().getEvictions()!=1)
+			System.out.println("a word that keeps missing was never cached (-10)");
+	}
+	
+	public static void testFingerprintCache() {
+		// estimates never fall below the true count, stop at 15, and are halved after ten accesses per entry
+		CountMinSketch sketch=new CountMinSketch(64);
+		for(long key=1;key<=20;key++)
+			for(int i=0;i<key;i++)
+				sketch.increment(key*0x9E3779B97F4A7C15L);
+		boolean low=false;
+		for(long key=1;key<=20;key++)
+			low|=sketch.frequency(key*0x9E3779B97F4A7C15L)<Math.min(key, 15);
+		if(low || sketch.frequency(20*0x9E3779B97F4A7C15L)!=15)
+			System.out.println("wrong estimate of the count-min sketch (-5)");
+		for(long key=1;sketch.frequency(20*0x9E3779B97F4A7C15L)==15 && key<=640;key++)
+			sketch.increment(-key);
+		if(sketch.frequency(20*0x9E3779B97F4A7C15L)!=7)
+			System.out.println("the count-min sketch did not halve its counters (-5)");
+		
+		// a cached fingerprint hits, and a full set evicts its least frequently used entry
+		FingerprintCache cache=new FingerprintCache(10);
+		if(cache.getCapacity()!=16)
+			System.out.println("wrong capacity of the fingerprint cache (-5)");
+		cache=new FingerprintCache(8);
+		for(long key=1;key<=8;key++)
+			cache.add(key);
+		for(long key=2;key<=8;key++)
+			cache.query(key);
+		boolean lost=false;
+		for(long key=1;key<=8;key++)
+			lost|=!cache.query(key);
+		if(lost || cache.query(9) || cache.getStats().getHits()!=15 || cache.getStats().getMisses()!=1)
+			System.out.println("wrong answer of the fingerprint cache (-10)");
+		for(int i=0;i<5 && !cache.query(9);i++)
+			cache.add(9);
+		if(!cache.query(9) || cache.query(1) || cache.getStats().getEvictions()!=1)
+			System.out.println("the fingerprint cache did not evict its least frequently used entry (-10)");
+		
+		// a known answer gets in however rarely it was used, and a wrong one can be removed
+		cache.admit(10);
+		cache.remove(9);
+		if(!cache.query(10) || cache.query(9) || cache.getStats().getEvictions()!=2)
+			System.out.println("problem admitting or removing a word of the fingerprint cache (-10)");
+		cache.remove(11); // not cached, nothing happens
+		cache.add(9);
+		if(!cache.query(9))
+			System.out.println("the fingerprint cache did not reuse the entry of a removed word (-10)");
+	}
+	
+	public static void testOffHeap() {
+		// the same words give the same bits and answers whether the filter and index are on or off the heap
+		BloomFilter heap=BloomFilter.create(1000, 0.01, false);
+		BloomFilter direct=BloomFilter.create(1000, 0.01, true);
+		List<byte[]> words=new ArrayList<>();
+		for(int i=0;i<1000;i++) {
+			heap.add("w"+i);
+			direct.addHashConcurrently(direct.getHashStrategy().hash("w"+i));
+			words.add(("w"+i).getBytes(StandardCharsets.UTF_8));
+		}
+		if(heap.isOffHeap() || !direct.isOffHeap() || !heap.toString().equals(direct.toString()))
+			System.out.println("an off-heap Bloom filter has other bits than a heap one (-10)");
+		WordIndex heapIndex=new WordIndex(words, false);
+		WordIndex directIndex=new WordIndex(words, true);
+		if(heapIndex.isOffHeap() || !directIndex.isOffHeap() || heapIndex.size()!=directIndex.size())
+			System.out.println("an off-heap index differs from a heap one (-10)");
+		boolean differ=false;
+		for(int i=0;i<2000;i++)
+			differ|=heap.contains("w"+i)!=direct.contains("w"+i) || heapIndex.contains("w"+i)!=directIndex.contains("w"+i);
+		if(differ)
+			System.out.println("an off-heap filter or index answered other than a heap one (-10)");
+		
+		String b=tempBook();
+		String w[]=writeFile(b);
+		Dictionary onHeap=new Dictionary(true, false, b);
+		Dictionary offHeap=new Dictionary(true, true, b);
+		for(String word : new String[]{w[0], w[9], "2"+w[0], "3"+w[9], w[5]+"0"})
+			if(onHeap.query(word)!=offHeap.query(word) || onHeap.challenge(word)!=offHeap.challenge(word))
+				System.out.println("an off-heap Dictionary answered other than a heap one (-10)");
+		if(onHeap.getBloomFillRatio()!=offHeap.getBloomFillRatio())
+			System.out.println("an off-heap Dictionary has other Bloom filter bits than a heap one (-10)");
 	}
 	
 	public static void main(String[] args) {
+		testHashes();
+		testBloomSizing();
+		testIndex();
+		testTokenizer();
+		testChunks();
+		testOffHeap();
+		testLRU();
+		testLFU();
+		testFingerprintCache();
+		testAdmission();
 		if(testServer()) {
 			testDM();
+			testConcurrentDM();
 			testBSCH();			
+			testThreadPool();
+			testNio();
+			testKeepAlive();
+			testKeepAliveClients();
+			testBatch();
+			testStats();
+			testSnapshot();
+			testBudget();
+			testCombine();
 		}
 		System.out.println("done");
 	}
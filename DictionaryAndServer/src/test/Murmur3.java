@@ -0,0 +1,272 @@
+package test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The Murmur3 class implements the HashStrategy interface using the x64 128-bit variant of MurmurHash3.
+ * It returns the lower 64 bits of the hash, which the BloomFilter splits into the two halves used for double hashing.
+ * Words are hashed straight from their characters as if they were encoded to UTF-8, without allocating.
+ */
+public class Murmur3 implements HashStrategy
+{
+    private static final long C1 = 0x87c37b91114253d5L; // First block mixing constant
+    private static final long C2 = 0x4cf5ad432745937fL; // Second block mixing constant
+
+    private final long seed; // Seed for both hash lanes
+
+    /**
+     * Constructor to create a Murmur3 hash strategy with a seed of zero.
+     */
+    public Murmur3()
+    {
+        this(0);
+    }
+
+    /**
+     * Constructor to create a Murmur3 hash strategy with the specified seed.
+     *
+     * @param seed The seed for the hash.
+     */
+    public Murmur3(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Gets the seed of the hash.
+     *
+     * @return The seed.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Checks if another object hashes the same way, that is, if it is a Murmur3 with the same seed.
+     *
+     * @param o The object to compare with.
+     * @return True if both hash every word to the same value, false otherwise.
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        return o instanceof Murmur3 && ((Murmur3) o).seed == seed;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Long.hashCode(seed);
+    }
+
+    /**
+     * Hashes a word.
+     *
+     * @param word The word to hash.
+     * @return The 64-bit hash of the word.
+     */
+    @Override
+    public long hash(CharSequence word)
+    {
+        int length = word.length();
+        for (int i = 0; i < length; i++)
+        {
+            if (word.charAt(i) >= 0x80) // Not ASCII, so the chars are not the UTF-8 bytes
+            {
+                return hashUtf8(word);
+            }
+        }
+
+        long h1 = seed;
+        long h2 = seed;
+        int i = 0;
+        for (; i + 16 <= length; i += 16)
+        {
+            h1 ^= mixK1(block(word, i));
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(block(word, i + 8));
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        for (int j = 0; i + j < length; j++)
+        {
+            long b = word.charAt(i + j);
+            if (j < 8)
+                k1 ^= b << (8 * j);
+            else
+                k2 ^= b << (8 * (j - 8));
+        }
+        return finish(h1 ^ mixK1(k1), h2 ^ mixK2(k2), length);
+    }
+
+    /**
+     * Hashes a word by encoding it to UTF-8 on the fly, one code point at a time.
+     * Unpaired surrogates are encoded as '?', the same as String.getBytes does.
+     */
+    private long hashUtf8(CharSequence word)
+    {
+        long h1 = seed;
+        long h2 = seed;
+        long k1 = 0;
+        long k2 = 0;
+        int position = 0; // Number of UTF-8 bytes hashed so far
+        int length = word.length();
+        for (int i = 0; i < length; i++)
+        {
+            int c = word.charAt(i);
+            int encoded; // Up to four bytes of the code point, first byte lowest
+            int count;
+            if (c < 0x80)
+            {
+                encoded = c;
+                count = 1;
+            }
+            else if (c < 0x800)
+            {
+                encoded = (0xc0 | c >> 6) | (0x80 | c & 0x3f) << 8;
+                count = 2;
+            }
+            else if (Character.isHighSurrogate((char) c) && i + 1 < length && Character.isLowSurrogate(word.charAt(i + 1)))
+            {
+                int cp = Character.toCodePoint((char) c, word.charAt(++i));
+                encoded = (0xf0 | cp >> 18) | (0x80 | cp >> 12 & 0x3f) << 8 | (0x80 | cp >> 6 & 0x3f) << 16 | (0x80 | cp & 0x3f) << 24;
+                count = 4;
+            }
+            else if (Character.isSurrogate((char) c))
+            {
+                encoded = '?';
+                count = 1;
+            }
+            else
+            {
+                encoded = (0xe0 | c >> 12) | (0x80 | c >> 6 & 0x3f) << 8 | (0x80 | c & 0x3f) << 16;
+                count = 3;
+            }
+            for (int j = 0; j < count; j++, position++)
+            {
+                long b = (encoded >>> (8 * j)) & 0xff;
+                int lane = position & 15;
+                if (lane < 8)
+                    k1 |= b << (8 * lane);
+                else
+                    k2 |= b << (8 * (lane - 8));
+                if (lane == 15) // A whole block is ready
+                {
+                    h1 ^= mixK1(k1);
+                    h1 = Long.rotateLeft(h1, 27) + h2;
+                    h1 = h1 * 5 + 0x52dce729;
+                    h2 ^= mixK2(k2);
+                    h2 = Long.rotateLeft(h2, 31) + h1;
+                    h2 = h2 * 5 + 0x38495ab5;
+                    k1 = 0;
+                    k2 = 0;
+                }
+            }
+        }
+        return finish(h1 ^ mixK1(k1), h2 ^ mixK2(k2), position);
+    }
+
+    /**
+     * Hashes a range of bytes holding the UTF-8 encoding of a word.
+     *
+     * @param buffer The buffer holding the word.
+     * @param offset The index of the first byte of the word.
+     * @param length The number of bytes in the word.
+     * @return The 64-bit hash of the word.
+     */
+    @Override
+    public long hash(ByteBuffer buffer, int offset, int length)
+    {
+        long h1 = seed;
+        long h2 = seed;
+        int i = 0;
+        for (; i + 16 <= length; i += 16)
+        {
+            h1 ^= mixK1(block(buffer, offset + i));
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(block(buffer, offset + i + 8));
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        for (int j = 0; i + j < length; j++)
+        {
+            long b = buffer.get(offset + i + j) & 0xff;
+            if (j < 8)
+                k1 ^= b << (8 * j);
+            else
+                k2 ^= b << (8 * (j - 8));
+        }
+        return finish(h1 ^ mixK1(k1), h2 ^ mixK2(k2), length);
+    }
+
+    /**
+     * Reads 8 ASCII characters as a little-endian block.
+     */
+    private static long block(CharSequence word, int i)
+    {
+        long k = 0;
+        for (int j = 7; j >= 0; j--)
+        {
+            k = (k << 8) | word.charAt(i + j);
+        }
+        return k;
+    }
+
+    /**
+     * Reads 8 bytes as a little-endian block, whatever the byte order of the buffer.
+     */
+    private static long block(ByteBuffer buffer, int i)
+    {
+        long k = 0;
+        for (int j = 7; j >= 0; j--)
+        {
+            k = (k << 8) | (buffer.get(i + j) & 0xff);
+        }
+        return k;
+    }
+
+    private static long mixK1(long k1)
+    {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2)
+    {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    /**
+     * Finalizes both lanes and returns the lower 64 bits of the 128-bit hash.
+     */
+    private static long finish(long h1, long h2, int length)
+    {
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        return h1 + h2;
+    }
+
+    private static long fmix64(long k)
+    {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
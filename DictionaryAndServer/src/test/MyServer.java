@@ -4,58 +4,192 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The MyServer class manages a server that listens on a specified port and handles client connections using a ClientHandler.
+ * Connections are dispatched according to an ExecutionMode, with at most maxClients handled at the same time.
+ * When the limit is reached the server stops accepting, so further clients wait in the listen backlog.
  */
 public class MyServer {
+    /**
+     * How client connections are executed.
+     */
+    public enum ExecutionMode {
+        INLINE, // Each client is handled on the accept thread, one at a time
+        THREAD_POOL, // Clients are handled by a bounded pool of platform threads
+        VIRTUAL_THREAD // Each client gets its own virtual thread, or platform thread if virtual threads are unavailable
+    }
+
+    public static final int DEFAULT_MAX_CLIENTS = 64; // Default limit of concurrently handled clients
+    public static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 30000; // Idle timeout of kept-alive connections in milliseconds
+
     private int port; // Port number the server listens on
     private ClientHandler ch; // ClientHandler to handle client requests
+    private ExecutionMode mode; // How client connections are executed
+    private int maxClients; // Maximum number of clients handled at the same time
+    private int idleTimeout; // Read timeout for client connections in milliseconds, 0 for none
     private volatile boolean stop; // Flag to stop the server
 
     /**
      * Constructor to create a MyServer instance with the specified port and ClientHandler.
+     * Clients are handled one at a time on the accept thread, so a handler that keeps per-connection state in
+     * fields is safe. Use the constructor with an ExecutionMode to handle clients concurrently.
+     * A keep-alive handler is the exception: one idle client would hold the accept thread, so its clients are
+     * handled by a pool of DEFAULT_MAX_CLIENTS threads instead.
      *
      * @param port The port number the server listens on.
      * @param ch   The ClientHandler to handle client requests.
      */
     public MyServer(int port, ClientHandler ch) {
+        this(port, ch, ch.isKeepAlive() ? ExecutionMode.THREAD_POOL : ExecutionMode.INLINE,
+                ch.isKeepAlive() ? DEFAULT_MAX_CLIENTS : 1);
+    }
+
+    /**
+     * Constructor to create a MyServer instance with the specified port, ClientHandler and execution mode.
+     *
+     * @param port       The port number the server listens on.
+     * @param ch         The ClientHandler to handle client requests.
+     * @param mode       How client connections are executed.
+     * @param maxClients The maximum number of clients handled at the same time.
+     */
+    public MyServer(int port, ClientHandler ch, ExecutionMode mode, int maxClients) {
+        if (maxClients <= 0) {
+            throw new IllegalArgumentException("maxClients must be positive: " + maxClients);
+        }
         this.port = port;
         this.ch = ch;
+        this.mode = mode;
+        this.maxClients = maxClients;
+        this.idleTimeout = ch.isKeepAlive() ? DEFAULT_KEEP_ALIVE_TIMEOUT : 0;
         this.stop = false;
     }
 
+    /**
+     * Sets how long a client connection may stay idle before a read on it fails.
+     * Keep-alive handlers get DEFAULT_KEEP_ALIVE_TIMEOUT unless this is called, so abandoned connections free their
+     * slot; other handlers wait forever by default. Must be called before start.
+     *
+     * @param millis The read timeout in milliseconds, or 0 to wait forever.
+     */
+    public void setIdleTimeout(int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("idle timeout must not be negative: " + millis);
+        }
+        this.idleTimeout = millis;
+    }
+
     /**
      * Runs the server, listening for client connections and handling them using the ClientHandler.
      *
+     * @param server The bound server socket.
      * @throws Exception if an error occurs while running the server.
      */
-    private void runServer() throws Exception {
-        try (ServerSocket server = new ServerSocket(port)) {
+    private void runServer(ServerSocket server) throws Exception {
+        ExecutorService executor = createExecutor();
+        Semaphore permits = new Semaphore(maxClients);
+        try (server) {
             server.setSoTimeout(1000);
             while (!stop) {
+                // Back-pressure: do not accept until a client slot is free
+                if (!permits.tryAcquire(1, TimeUnit.SECONDS)) {
+                    continue;
+                }
                 try {
                     Socket aClient = server.accept();
-                    ch.handleClient(aClient.getInputStream(), aClient.getOutputStream());
-                    aClient.close();
+                    if (executor == null) {
+                        handle(aClient, permits);
+                    } else {
+                        executor.execute(() -> handle(aClient, permits));
+                    }
                 } catch (SocketTimeoutException e) {
-                    // Ignore and continue to the next iteration
+                    permits.release(); // Ignore and continue to the next iteration
                 } catch (IOException e) {
+                    permits.release();
                     e.printStackTrace();
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Handles one client connection and releases its slot.
+     *
+     * @param aClient The client socket.
+     * @param permits The client slots of the server.
+     */
+    private void handle(Socket aClient, Semaphore permits) {
+        ClientHandler handler = ch.forConnection();
+        try {
+            if (idleTimeout > 0) {
+                aClient.setSoTimeout(idleTimeout);
+            }
+            handler.handleClient(aClient.getInputStream(), aClient.getOutputStream());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (handler != ch) {
+                handler.close();
+            }
+            try {
+                aClient.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * Creates the executor for the execution mode.
+     *
+     * @return The executor, or null when clients are handled inline.
+     */
+    private ExecutorService createExecutor() {
+        switch (mode) {
+            case THREAD_POOL:
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(maxClients, maxClients, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+                pool.allowCoreThreadTimeOut(true);
+                return pool;
+            case VIRTUAL_THREAD:
+                try {
+                    // Looked up reflectively so the server still runs on JDKs without virtual threads
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    return Executors.newCachedThreadPool();
+                }
+            default:
+                return null;
         }
     }
 
     /**
      * Starts the server in a new thread.
+     * The port is bound before this method returns, so clients can connect immediately.
      */
     public void start() {
+        ServerSocket server;
+        try {
+            server = new ServerSocket(port);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
         new Thread(() -> {
             try {
-                runServer();
+                runServer(server);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -64,9 +198,9 @@ public class MyServer {
 
     /**
      * Stops the server.
+     * Clients that are already being handled are allowed to finish.
      */
     public void close() {
         stop = true;
     }
 }
-
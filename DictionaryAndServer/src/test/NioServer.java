@@ -0,0 +1,267 @@
+package test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The NioServer class serves the BookScrabble line protocol with a single non-blocking selector thread.
+ * Request lines are framed directly in each connection's ByteBuffer and answered by a BookScrabbleHandler
+ * on a small worker pool, so idle connections cost no thread and a slow dictionary load does not stall the selector.
+ * Like MyServer with a BookScrabbleHandler, each connection carries one request and is closed after the answer.
+ */
+public class NioServer
+{
+    private static final int MAX_LINE = 8192; // Longest accepted request line, in bytes
+
+    private int port; // Port number the server listens on
+    private BookScrabbleHandler handler; // Handler that evaluates the requests
+    private int workers; // Number of threads evaluating requests
+    private volatile boolean stop; // Flag to stop the server
+    private Selector selector; // Selector of the running server, null before start
+    private ConcurrentLinkedQueue<SelectionKey> answered; // Connections whose answer is ready to be written
+
+    /**
+     * Per-connection state, attached to the connection's SelectionKey.
+     */
+    private static class Connection
+    {
+        ByteBuffer in = ByteBuffer.allocate(256); // Bytes read from the client
+        ByteBuffer out; // Answer to write to the client, null until evaluated
+    }
+
+    /**
+     * Constructor to create a NioServer with one worker thread per available processor.
+     *
+     * @param port    The port number the server listens on.
+     * @param handler The handler that evaluates the requests.
+     */
+    public NioServer(int port, BookScrabbleHandler handler)
+    {
+        this(port, handler, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor to create a NioServer with the specified number of worker threads.
+     *
+     * @param port    The port number the server listens on.
+     * @param handler The handler that evaluates the requests.
+     * @param workers The number of threads evaluating requests.
+     */
+    public NioServer(int port, BookScrabbleHandler handler, int workers)
+    {
+        this.port = port;
+        this.handler = handler;
+        this.workers = workers;
+        this.answered = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Starts the server in a new thread.
+     * The port is bound before this method returns, so clients can connect immediately.
+     */
+    public void start()
+    {
+        ServerSocketChannel server;
+        try {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(port), 1024);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        new Thread(() -> runServer(server)).start();
+    }
+
+    /**
+     * Stops the server immediately.
+     * Open connections are closed without an answer.
+     */
+    public void close()
+    {
+        stop = true;
+        if (selector != null)
+        {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the selector loop until the server is closed.
+     *
+     * @param server The bound server channel.
+     */
+    private void runServer(ServerSocketChannel server)
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            while (!stop)
+            {
+                selector.select();
+                SelectionKey done;
+                while ((done = answered.poll()) != null)
+                {
+                    if (done.isValid())
+                    {
+                        done.interestOps(SelectionKey.OP_WRITE);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable())
+                        {
+                            accept(server);
+                        }
+                        else if (key.isReadable())
+                        {
+                            read(key, pool);
+                        }
+                        else if (key.isWritable())
+                        {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        closeKey(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdownNow();
+            for (SelectionKey key : selector.keys())
+            {
+                closeKey(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Accepts all pending connections.
+     */
+    private void accept(ServerSocketChannel server) throws IOException
+    {
+        SocketChannel client;
+        while ((client = server.accept()) != null)
+        {
+            client.configureBlocking(false);
+            client.register(selector, SelectionKey.OP_READ, new Connection());
+        }
+    }
+
+    /**
+     * Reads from a connection and submits the request once a full line has arrived.
+     * End of stream also completes the line, as a Scanner would.
+     */
+    private void read(SelectionKey key, ExecutorService pool) throws IOException
+    {
+        Connection c = (Connection) key.attachment();
+        int n = ((SocketChannel) key.channel()).read(c.in);
+        int end = lineEnd(c.in);
+        if (end < 0 && n >= 0)
+        {
+            if (!c.in.hasRemaining())
+            {
+                if (c.in.capacity() >= MAX_LINE)
+                {
+                    closeKey(key); // Line too long
+                    return;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(c.in.capacity() * 2);
+                c.in.flip();
+                bigger.put(c.in);
+                c.in = bigger;
+            }
+            return;
+        }
+        if (end < 0)
+        {
+            end = c.in.position();
+        }
+        if (end == 0 && n < 0)
+        {
+            closeKey(key); // Client left without sending anything
+            return;
+        }
+        int length = end;
+        if (length > 0 && c.in.get(length - 1) == '\r')
+        {
+            length--;
+        }
+        String line = new String(c.in.array(), 0, length, StandardCharsets.UTF_8);
+        key.interestOps(0); // One request per connection; wait for the answer
+        pool.execute(() -> {
+            String result;
+            try {
+                result = handler.respond(line);
+            } catch (RuntimeException e) {
+                result = null;
+            }
+            c.out = ByteBuffer.wrap(result == null ? new byte[0] : (result + "\n").getBytes(StandardCharsets.UTF_8));
+            answered.add(key);
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * Finds the first newline in the bytes read so far.
+     *
+     * @return The index of the newline, or -1 if there is none yet.
+     */
+    private static int lineEnd(ByteBuffer in)
+    {
+        for (int i = 0; i < in.position(); i++)
+        {
+            if (in.get(i) == '\n')
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the answer and closes the connection once it has been sent.
+     */
+    private void write(SelectionKey key) throws IOException
+    {
+        Connection c = (Connection) key.attachment();
+        ((SocketChannel) key.channel()).write(c.out);
+        if (!c.out.hasRemaining())
+        {
+            closeKey(key);
+        }
+    }
+
+    private static void closeKey(SelectionKey key)
+    {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
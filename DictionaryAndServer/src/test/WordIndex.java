@@ -0,0 +1,327 @@
+package test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The WordIndex class is a compact, exact set of words for answering challenges from memory.
+ * The distinct words are stored as sorted UTF-8 bytes packed into one array, and looked up by binary search.
+ * It costs roughly the size of the words themselves plus four bytes per word,
+ * either on the heap or off-heap in direct buffers that the garbage collector never scans or copies.
+ */
+public class WordIndex
+{
+    private ByteBuffer words; // UTF-8 bytes of all distinct words, in sorted order
+    private IntBuffer offsets; // Start of each word in words, plus the end of the last word
+
+    /**
+     * Words collected for a WordIndex, packed one after the other into a growing array rather than kept as an array
+     * per word, which would cost an object header and a reference for each word of a book.
+     * A WordList is filled by one thread; lists filled by separate threads are combined with addAll.
+     */
+    static class WordList
+    {
+        private static final int MAX_LENGTH = Integer.MAX_VALUE - 8; // Longest array the VM is sure to allocate
+
+        private byte[] bytes = new byte[1 << 10]; // UTF-8 bytes of the words, in the order they were added
+        private int[] starts = new int[1 << 7]; // Start of each word in bytes, plus the end of the last word
+        private int count; // Number of words
+
+        /**
+         * Adds a word.
+         *
+         * @param buffer The buffer holding the UTF-8 bytes of the word.
+         * @param offset The index of the first byte of the word in the buffer.
+         * @param length The number of bytes of the word.
+         */
+        void add(ByteBuffer buffer, int offset, int length)
+        {
+            int position = reserve(length, 1);
+            buffer.get(offset, bytes, position, length);
+            starts[++count] = position + length;
+        }
+
+        /**
+         * Adds all words of another list after the words of this one.
+         *
+         * @param other The list to add.
+         */
+        void addAll(WordList other)
+        {
+            int position = reserve(other.starts[other.count], other.count);
+            System.arraycopy(other.bytes, 0, bytes, position, other.starts[other.count]);
+            for (int i = 1; i <= other.count; i++)
+            {
+                starts[++count] = position + other.starts[i];
+            }
+        }
+
+        /**
+         * Makes room for more words, growing the arrays by half or more.
+         *
+         * @return The position in bytes of the first new byte.
+         */
+        private int reserve(int length, int words)
+        {
+            int position = starts[count];
+            if ((long) position + length > MAX_LENGTH || (long) count + words >= MAX_LENGTH)
+            {
+                throw new IllegalArgumentException("too many words to index: " + ((long) position + length) + " bytes");
+            }
+            if (position + length > bytes.length)
+            {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(MAX_LENGTH,
+                        Math.max(position + length, bytes.length + (long) (bytes.length >> 1))));
+            }
+            if (count + words >= starts.length)
+            {
+                starts = Arrays.copyOf(starts, (int) Math.min(MAX_LENGTH,
+                        Math.max(count + words + 1, starts.length + (long) (starts.length >> 1))));
+            }
+            return position;
+        }
+
+        /**
+         * Compares two words of the list byte by byte as unsigned values.
+         */
+        private int compare(int a, int b)
+        {
+            return Arrays.compareUnsigned(bytes, starts[a], starts[a + 1], bytes, starts[b], starts[b + 1]);
+        }
+
+        /**
+         * Gets the number of words in the list, duplicates included.
+         *
+         * @return The number of words.
+         */
+        int size()
+        {
+            return count;
+        }
+    }
+
+    /**
+     * Constructor to create a WordIndex on the heap from a list of UTF-8 encoded words.
+     * Duplicates are stored once.
+     *
+     * @param wordList The UTF-8 bytes of the words to index.
+     */
+    public WordIndex(List<byte[]> wordList)
+    {
+        this(wordList, false);
+    }
+
+    /**
+     * Constructor to create a WordIndex from a list of UTF-8 encoded words.
+     * Duplicates are stored once.
+     *
+     * @param wordList The UTF-8 bytes of the words to index.
+     * @param offHeap  True to keep the index in off-heap memory, false to keep it on the heap.
+     */
+    public WordIndex(List<byte[]> wordList, boolean offHeap)
+    {
+        this(pack(wordList), offHeap);
+    }
+
+    private static WordList pack(List<byte[]> wordList)
+    {
+        WordList list = new WordList();
+        for (byte[] word : wordList)
+        {
+            list.add(ByteBuffer.wrap(word), 0, word.length);
+        }
+        return list;
+    }
+
+    /**
+     * Constructor to create a WordIndex from packed words. The words are sorted by their position in the list,
+     * so the only memory used besides the list and the index is two ints per word.
+     * Duplicates are stored once.
+     *
+     * @param list    The words to index.
+     * @param offHeap True to keep the index in off-heap memory, false to keep it on the heap.
+     */
+    WordIndex(WordList list, boolean offHeap)
+    {
+        int[] order = new int[list.size()];
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = i;
+        }
+        sort(list, order);
+
+        int count = 0;
+        int total = 0;
+        for (int i = 0; i < order.length; i++)
+        {
+            if (count > 0 && list.compare(order[i], order[count - 1]) == 0)
+            {
+                continue; // A duplicate of the last word kept
+            }
+            order[count++] = order[i];
+            total += list.starts[order[i] + 1] - list.starts[order[i]];
+        }
+        if (offHeap)
+        {
+            this.words = ByteBuffer.allocateDirect(total);
+            this.offsets = ByteBuffer.allocateDirect(4 * (count + 1)).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        else
+        {
+            this.words = ByteBuffer.allocate(total);
+            this.offsets = IntBuffer.allocate(count + 1);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            offsets.put(words.position());
+            words.put(list.bytes, list.starts[order[i]], list.starts[order[i] + 1] - list.starts[order[i]]);
+        }
+        offsets.put(words.position());
+        words.flip();
+        offsets.flip();
+    }
+
+    /**
+     * Sorts the positions of the words of a list in the order of the words, with a bottom-up merge sort.
+     */
+    private static void sort(WordList list, int[] order)
+    {
+        int[] from = order;
+        int[] to = new int[order.length];
+        for (int width = 1; width < order.length; width <<= 1)
+        {
+            for (int low = 0; low < order.length; low += width << 1)
+            {
+                int mid = Math.min(low + width, order.length);
+                int high = Math.min(low + (width << 1), order.length);
+                int i = low;
+                int j = mid;
+                for (int k = low; k < high; k++)
+                {
+                    to[k] = j >= high || i < mid && list.compare(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != order)
+        {
+            System.arraycopy(from, 0, order, 0, order.length);
+        }
+    }
+
+    /**
+     * Constructor to create a WordIndex over words that are already packed, such as those of a memory-mapped snapshot.
+     *
+     * @param words   The UTF-8 bytes of all distinct words, in sorted order.
+     * @param offsets The start of each word in words, plus the end of the last word.
+     */
+    WordIndex(ByteBuffer words, IntBuffer offsets)
+    {
+        this.words = words;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Gets a read-only view of the packed words, for saving the index.
+     *
+     * @return The UTF-8 bytes of all distinct words, in sorted order.
+     */
+    ByteBuffer getWords()
+    {
+        return words.asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets a read-only view of the word offsets, for saving the index.
+     *
+     * @return The start of each word, plus the end of the last word.
+     */
+    IntBuffer getOffsets()
+    {
+        return offsets.asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks if a word is in the index.
+     *
+     * @param word The word to check.
+     * @return True if the word was indexed, false otherwise.
+     */
+    public boolean contains(String word)
+    {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(offsets.get(mid), offsets.get(mid + 1), key);
+            if (cmp < 0)
+            {
+                low = mid + 1;
+            }
+            else if (cmp > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the indexed word stored in a range of words with a key, byte by byte as unsigned values.
+     */
+    private int compare(int from, int to, byte[] key)
+    {
+        int length = Math.min(to - from, key.length);
+        for (int i = 0; i < length; i++)
+        {
+            int cmp = Byte.compareUnsigned(words.get(from + i), key[i]);
+            if (cmp != 0)
+            {
+                return cmp;
+            }
+        }
+        return Integer.compare(to - from, key.length);
+    }
+
+    /**
+     * Gets the number of distinct words in the index.
+     *
+     * @return The number of words.
+     */
+    public int size()
+    {
+        return offsets.limit() - 1;
+    }
+
+    /**
+     * Estimates the memory used by the index.
+     *
+     * @return The approximate size in bytes.
+     */
+    public long sizeInBytes()
+    {
+        return words.capacity() + 4L * offsets.capacity();
+    }
+
+    /**
+     * Tells whether the index is kept in off-heap memory.
+     *
+     * @return True if the index is off-heap, false if it is on the heap.
+     */
+    public boolean isOffHeap()
+    {
+        return words.isDirect();
+    }
+}
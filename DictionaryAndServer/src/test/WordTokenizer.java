@@ -0,0 +1,299 @@
+package test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The WordTokenizer class walks the whitespace-separated words of a book file directly in memory-mapped bytes.
+ * Words are reported as ranges of the mapped buffer, so no characters are decoded and no strings are created.
+ * Whitespace means the ASCII whitespace characters that Character.isWhitespace accepts.
+ */
+public class WordTokenizer
+{
+    private static final int REGION = 1 << 30; // Largest part of a file mapped at once
+    private static final int TAIL = 1 << 12; // Bytes mapped past the end of a range to finish its last word, at first
+
+    /**
+     * The TokenVisitor interface receives the words found by the tokenizer.
+     */
+    public interface TokenVisitor
+    {
+        /**
+         * Visits one word. The bytes are only valid during the call.
+         *
+         * @param buffer The buffer holding the word.
+         * @param offset The index of the first byte of the word.
+         * @param length The number of bytes in the word.
+         * @return True to continue with the next word, false to stop.
+         */
+        boolean visit(ByteBuffer buffer, int offset, int length);
+    }
+
+    /**
+     * Visits every word of a file in order.
+     *
+     * @param fileName The name of the file.
+     * @param visitor  The visitor for the words.
+     * @return True if the visitor stopped the walk early, false if all words were visited.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public static boolean forEachWord(String fileName, TokenVisitor visitor) throws IOException
+    {
+        return forEachWord(fileName, 0, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Visits, in order, the words of a file that start within a byte range.
+     * A word that starts in the range is visited whole even if it ends after the range, and a word that
+     * started before the range is skipped, so adjacent ranges visit every word of the file exactly once.
+     *
+     * @param fileName The name of the file.
+     * @param from     The file offset where the range starts.
+     * @param to       The file offset where the range ends, exclusive.
+     * @param visitor  The visitor for the words.
+     * @return True if the visitor stopped the walk early, false if all words were visited.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public static boolean forEachWord(String fileName, long from, long to, TokenVisitor visitor) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            to = Math.min(to, size);
+            // Start one byte early to see whether the range begins inside a word
+            long position = from > 0 ? from - 1 : 0;
+            boolean skipPartialWord = from > 0;
+            while (position < to)
+            {
+                long rest = to - position; // Bytes of the range left to walk
+                int length;
+                MappedByteBuffer buffer;
+                int end;
+                if (rest > REGION)
+                {
+                    length = REGION;
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                    // Stop this region after its last whitespace so no word is split between regions
+                    end = length;
+                    while (end > 0 && !isWhitespace(buffer.get(end - 1)))
+                    {
+                        end--;
+                    }
+                    if (end == 0)
+                    {
+                        end = length;
+                    }
+                }
+                else
+                {
+                    // Map the rest of the range and a tail, longer only if the last word does not end within it
+                    long tail = TAIL;
+                    while (true)
+                    {
+                        length = (int) Math.min(Math.min(rest + tail, size - position), Integer.MAX_VALUE);
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                        if (position + length == size || length == Integer.MAX_VALUE
+                                || hasWhitespace(buffer, (int) Math.max(0, rest - 1), length))
+                        {
+                            break;
+                        }
+                        tail *= 2;
+                    }
+                    end = length;
+                }
+                int begin = 0;
+                if (skipPartialWord)
+                {
+                    while (begin < end && !isWhitespace(buffer.get(begin)))
+                    {
+                        begin++;
+                    }
+                    skipPartialWord = false;
+                }
+                if (walk(buffer, begin, (int) Math.min(end, to - position), end, visitor))
+                {
+                    return true;
+                }
+                position += end;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visits every word of a file in order, reading the file through a buffer instead of mapping it.
+     * Nothing is left for the garbage collector to release, so this suits files that are searched over and over.
+     * The buffer only needs to be as long as the longest word; a longer word is read into a larger temporary buffer.
+     *
+     * @param fileName The name of the file.
+     * @param buffer   The buffer to read through, whose contents are overwritten.
+     * @param visitor  The visitor for the words.
+     * @return True if the visitor stopped the walk early, false if all words were visited.
+     * @throws IOException if the file cannot be opened or read.
+     */
+    public static boolean forEachWord(String fileName, ByteBuffer buffer, TokenVisitor visitor) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            buffer.clear();
+            boolean eof = false;
+            while (!eof)
+            {
+                eof = channel.read(buffer) < 0;
+                int limit = buffer.position();
+                int end = limit;
+                if (!eof)
+                {
+                    // Walk up to the last whitespace; the word after it may continue in the next read
+                    while (end > 0 && !isWhitespace(buffer.get(end - 1)))
+                    {
+                        end--;
+                    }
+                    if (end == 0)
+                    {
+                        if (limit == buffer.capacity())
+                        {
+                            // One word fills the buffer: go on in a buffer twice as long
+                            buffer.flip();
+                            buffer = ByteBuffer.allocate(2 * buffer.capacity()).put(buffer);
+                        }
+                        continue;
+                    }
+                }
+                if (walk(buffer, 0, end, end, visitor))
+                {
+                    return true;
+                }
+                buffer.limit(limit).position(end);
+                buffer.compact(); // Keep the unfinished word at the start of the buffer
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visits every word in a range of a buffer in order.
+     *
+     * @param buffer  The buffer holding the text.
+     * @param from    The index of the first byte of the range.
+     * @param to      The index after the last byte of the range.
+     * @param visitor The visitor for the words.
+     * @return True if the visitor stopped the walk early, false if all words were visited.
+     */
+    public static boolean forEachWord(ByteBuffer buffer, int from, int to, TokenVisitor visitor)
+    {
+        return walk(buffer, from, to, to, visitor);
+    }
+
+    /**
+     * Visits the words of a buffer that start before startLimit, reading them no further than end.
+     */
+    private static boolean walk(ByteBuffer buffer, int from, int startLimit, int end, TokenVisitor visitor)
+    {
+        int i = from;
+        while (i < startLimit)
+        {
+            while (i < startLimit && isWhitespace(buffer.get(i)))
+            {
+                i++;
+            }
+            if (i == startLimit)
+            {
+                break;
+            }
+            int start = i;
+            while (i < end && !isWhitespace(buffer.get(i)))
+            {
+                i++;
+            }
+            if (!visitor.visit(buffer, start, i - start))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the words of a file.
+     *
+     * @param fileName The name of the file.
+     * @return The number of words in the file.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public static long countWords(String fileName) throws IOException
+    {
+        return countWords(fileName, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Counts the words of a file that start within a byte range.
+     *
+     * @param fileName The name of the file.
+     * @param from     The file offset where the range starts.
+     * @param to       The file offset where the range ends, exclusive.
+     * @return The number of words starting in the range.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public static long countWords(String fileName, long from, long to) throws IOException
+    {
+        long[] count = new long[1];
+        forEachWord(fileName, from, to, (buffer, offset, length) -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * Checks if a word in a buffer has the same bytes as a key.
+     *
+     * @param buffer The buffer holding the word.
+     * @param offset The index of the first byte of the word.
+     * @param length The number of bytes in the word.
+     * @param key    The bytes to compare with.
+     * @return True if the word equals the key, false otherwise.
+     */
+    public static boolean equals(ByteBuffer buffer, int offset, int length, byte[] key)
+    {
+        if (length != key.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (buffer.get(offset + i) != key[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a range of a buffer holds any whitespace.
+     */
+    private static boolean hasWhitespace(ByteBuffer buffer, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (isWhitespace(buffer.get(i)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a byte is ASCII whitespace, the same set Character.isWhitespace accepts below 0x80.
+     */
+    private static boolean isWhitespace(byte b)
+    {
+        return b == ' ' || (b >= 0x09 && b <= 0x0d) || (b >= 0x1c && b <= 0x1f);
+    }
+}
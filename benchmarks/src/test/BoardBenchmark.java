@@ -0,0 +1,368 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import test.Tile.Bag;
+
+/**
+ * The BoardBenchmark class is the JMH benchmark suite of word placement and scoring on the Board.
+ * It replays the game of MainTrain and a synthetic game generated from a fixed seed, from an empty board through the
+ * opening and the mid-game to a dense late-game board, and reports the time per tryPlaceWord.
+ * Every replay starts from a new Board, whose construction is included in the numbers. The cost of a late-game move
+ * alone is (LATE_GAME_MOVES * replayToLateGame - MID_GAME_MOVES * replayToMidGame) / (LATE_GAME_MOVES - MID_GAME_MOVES).
+ * getWords, with the checkTop and checkLeft scans it makes for each tile, is measured by re-checking words already
+ * on a board, so that every call sees the same board, both returning a list and filling a reused WordBuffer.
+ * getScore and boardLegal are measured on the same boards.
+ * Run with -prof gc to see the bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark
+{
+    private static final int RECORDED_MOVES = 5; // Moves of the game played by MainTrain
+    private static final int MID_GAME_MOVES = 15; // Moves played by the middle of the synthetic game
+    private static final int LATE_GAME_MOVES = 40; // Moves played by the end of the synthetic game
+    private static final int ATTEMPTS = 100000; // Most placements tried while generating the synthetic game
+
+    /**
+     * A game that can be replayed any number of times. Board fills in the tiles of overlapping letters while it
+     * checks a move, so the moves are reset to their recorded tiles after each replay.
+     */
+    private static class Game
+    {
+        private final Word[] moves; // The moves, in the order they are played
+        private final Tile[][] recorded; // The tiles of each move as recorded, null where a board tile is used
+
+        Game(ArrayList<Word> moves)
+        {
+            this.moves = moves.toArray(new Word[0]);
+            this.recorded = new Tile[this.moves.length][];
+            for (int i = 0; i < this.moves.length; i++)
+            {
+                recorded[i] = this.moves[i].getTiles().clone();
+            }
+        }
+
+        /**
+         * Plays the first moves of the game on a new board.
+         *
+         * @param count The number of moves to play.
+         * @return The sum of the scores, 0 for each illegal move.
+         */
+        long replay(int count)
+        {
+            Board board = new Board();
+            long score = 0;
+            for (int i = 0; i < count; i++)
+            {
+                score += board.tryPlaceWord(moves[i]);
+            }
+            for (int i = 0; i < count; i++)
+            {
+                System.arraycopy(recorded[i], 0, moves[i].getTiles(), 0, recorded[i].length);
+            }
+            return score;
+        }
+
+        /**
+         * Plays the first moves of the game on a new board and keeps the board and the moves as played.
+         *
+         * @param count The number of moves to play.
+         * @param words Receives the moves with the tiles of overlapping letters filled in.
+         * @return The board.
+         */
+        Board play(int count, ArrayList<Word> words)
+        {
+            Board board = new Board();
+            for (int i = 0; i < count; i++)
+            {
+                Word word = new Word(recorded[i].clone(), moves[i].getRow(), moves[i].getCol(), moves[i].isVertical());
+                if (board.tryPlaceWord(word) == 0)
+                {
+                    throw new IllegalStateException("move " + i + " of the game is illegal");
+                }
+                words.add(word);
+            }
+            return board;
+        }
+    }
+
+    /**
+     * Gets the tile of a letter, leaving the bag as it was.
+     */
+    private static Tile tile(char letter)
+    {
+        Bag bag = Bag.getBag();
+        Tile t = bag.getTile(letter);
+        bag.put(t);
+        return t;
+    }
+
+    /**
+     * Gets the tiles of a word, with null for each '_' that uses a tile on the board.
+     */
+    private static Tile[] tiles(String s)
+    {
+        Tile[] ts = new Tile[s.length()];
+        for (int i = 0; i < ts.length; i++)
+        {
+            ts[i] = s.charAt(i) == '_' ? null : tile(s.charAt(i));
+        }
+        return ts;
+    }
+
+    /**
+     * The game played by MainTrain.
+     */
+    private static Game recordedGame()
+    {
+        ArrayList<Word> moves = new ArrayList<Word>();
+        moves.add(new Word(tiles("HORN"), 7, 5, false));
+        moves.add(new Word(tiles("FA_M"), 5, 7, true));
+        moves.add(new Word(tiles("PASTE"), 9, 5, false));
+        moves.add(new Word(tiles("_OB"), 8, 7, false));
+        moves.add(new Word(tiles("BIT"), 10, 4, false));
+        return new Game(moves);
+    }
+
+    /**
+     * Generates a legal game of random words drawn from the letter frequencies of the bag. After an opening word
+     * through the center, each move crosses one tile already on the board and lays new tiles on empty squares only.
+     *
+     * @param count The number of moves.
+     * @param seed  The seed of the random moves.
+     * @return The game.
+     */
+    private static Game syntheticGame(int count, long seed)
+    {
+        Random random = new Random(seed);
+        int[] quantities = Bag.getBag().getQuantities();
+        int total = 0;
+        for (int q : quantities)
+        {
+            total += q;
+        }
+        char[] letters = new char[total];
+        for (int l = 0, n = 0; l < quantities.length; l++)
+        {
+            for (int q = 0; q < quantities[l]; q++)
+            {
+                letters[n++] = (char) ('A' + l);
+            }
+        }
+
+        Board board = new Board();
+        Tile[][] placed = new Tile[Board.SIZE][Board.SIZE];
+        ArrayList<Word> moves = new ArrayList<Word>();
+        for (int attempt = 0; attempt < ATTEMPTS && moves.size() < count; attempt++)
+        {
+            int length = 2 + random.nextInt(6);
+            boolean vertical = random.nextBoolean();
+            int row;
+            int col;
+            int cross = -1;
+            if (moves.isEmpty())
+            {
+                row = vertical ? 7 - random.nextInt(length) : 7;
+                col = vertical ? 7 : 7 - random.nextInt(length);
+            }
+            else
+            {
+                row = random.nextInt(Board.SIZE);
+                col = random.nextInt(Board.SIZE);
+                if (placed[row][col] == null)
+                {
+                    continue;
+                }
+                cross = random.nextInt(length);
+                if (vertical)
+                {
+                    row -= cross;
+                }
+                else
+                {
+                    col -= cross;
+                }
+            }
+            if (row < 0 || col < 0 || (vertical ? row : col) + length >= Board.SIZE)
+            {
+                continue;
+            }
+            if (!free(placed, vertical ? row - 1 : row, vertical ? col : col - 1)
+                    || !free(placed, vertical ? row + length : row, vertical ? col : col + length))
+            {
+                continue;
+            }
+            Tile[] ts = new Tile[length];
+            boolean fits = true;
+            for (int i = 0; i < length && fits; i++)
+            {
+                int r = vertical ? row + i : row;
+                int c = vertical ? col : col + i;
+                if (i == cross)
+                {
+                    continue;
+                }
+                // Board fills in the crossing tile only if no letter before it touches another word
+                fits = placed[r][c] == null && (i > cross
+                        || free(placed, vertical ? r : r - 1, vertical ? c - 1 : c)
+                        && free(placed, vertical ? r : r + 1, vertical ? c + 1 : c));
+                ts[i] =tile(letters[random.nextInt(total)]);
+            }
+            Word move = new Word(ts.clone(), row, col, vertical);
+            if (!fits || board.tryPlaceWord(new Word(ts, row, col, vertical)) == 0)
+            {
+                continue;
+            }
+            for (int i = 0; i < length; i++)
+            {
+                placed[vertical ? row + i : row][vertical ? col : col + i] = ts[i];
+            }
+            moves.add(move);
+        }
+        if (moves.size() < count)
+        {
+            throw new IllegalStateException("generated only " + moves.size() + " of " + count + " moves");
+        }
+        return new Game(moves);
+    }
+
+    /**
+     * Checks that a square is off the board or empty.
+     */
+    private static boolean free(Tile[][] placed, int row, int col)
+    {
+        return row < 0 || col < 0 || row >= Board.SIZE || col >= Board.SIZE || placed[row][col] == null;
+    }
+
+    /**
+     * The game of MainTrain and the synthetic game.
+     */
+    @State(Scope.Thread)
+    public static class Games
+    {
+        @Param("1")
+        public long seed; // Seed of the synthetic game
+
+        private Game recorded; // The game played by MainTrain
+        private Game synthetic; // The synthetic game
+
+        @Setup
+        public void setUp()
+        {
+            recorded = recordedGame();
+            synthetic = syntheticGame(LATE_GAME_MOVES, seed);
+        }
+    }
+
+    /**
+     * A board with the moves of a game played on it, and those moves to check again.
+     */
+    @State(Scope.Thread)
+    public static class Played
+    {
+        @Param({"recorded", "mid-game", "late-game"})
+        public String board; // The game and the number of its moves played
+
+        private Board played; // The board
+        private Word[] words; // The moves played, with the tiles of overlapping letters filled in
+        private final WordBuffer buffer = new WordBuffer(); // Buffer reused by getWords
+        private int next; // Number of the next call
+
+        @Setup
+        public void setUp(Games games)
+        {
+            ArrayList<Word> moves = new ArrayList<Word>();
+            switch (board)
+            {
+                case "recorded":
+                    played = games.recorded.play(RECORDED_MOVES, moves);
+                    break;
+                case "mid-game":
+                    played = games.synthetic.play(MID_GAME_MOVES, moves);
+                    break;
+                case "late-game":
+                    played = games.synthetic.play(LATE_GAME_MOVES, moves);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown board: " + board);
+            }
+            words = moves.toArray(new Word[0]);
+        }
+
+        Word next()
+        {
+            return words[next++ % words.length];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDED_MOVES)
+    public long replayRecordedGame(Games games)
+    {
+        return games.recorded.replay(RECORDED_MOVES);
+    }
+
+    @Benchmark
+    public long replayOpening(Games games)
+    {
+        return games.synthetic.replay(1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MID_GAME_MOVES)
+    public long replayToMidGame(Games games)
+    {
+        return games.synthetic.replay(MID_GAME_MOVES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LATE_GAME_MOVES)
+    public long replayToLateGame(Games games)
+    {
+        return games.synthetic.replay(LATE_GAME_MOVES);
+    }
+
+    @Benchmark
+    public int getWords(Played played)
+    {
+        ArrayList<Word> found = played.played.getWords(played.next());
+        return found == null ? 0 : found.size();
+    }
+
+    @Benchmark
+    public int getWordsIntoBuffer(Played played)
+    {
+        return played.played.getWords(played.next(), played.buffer) ? played.buffer.size() : 0;
+    }
+
+    @Benchmark
+    public int getScore(Played played)
+    {
+        return played.played.getScore(played.next());
+    }
+
+    @Benchmark
+    public boolean boardLegal(Played played)
+    {
+        return played.played.boardLegal(played.next());
+    }
+}
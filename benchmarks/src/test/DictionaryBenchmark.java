@@ -0,0 +1,396 @@
+package test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The DictionaryBenchmark class is the JMH benchmark suite of the dictionary and server stack.
+ * It covers BloomFilter add and contains, CacheManager with LRU and LFU at several sizes and the cost of an eviction
+ * as the cache grows, Dictionary query and challenge on generated books, IOSearcher.search, and MyServer with
+ * BookScrabbleHandler over loopback.
+ * Books are generated from a fixed seed into a temporary directory, so every run measures the same data. Book sizes
+ * are in words; 10000000 works too (-p words=10000000), given about 100 MB of disk and a few GB of heap.
+ * Run with -prof gc to see the bytes allocated per operation: a query answered from memory should allocate nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class DictionaryBenchmark
+{
+    private static final int PROBES = 1 << 16; // Distinct words probed per benchmark, a power of two
+    private static final int CACHED_PROBES = 1 << 12; // Probes few enough for the Dictionary caches to hold them all
+
+    /**
+     * Writes a book of random words from a vocabulary of a quarter of its length, ten words per line.
+     *
+     * @param path  The file to write.
+     * @param words The number of words.
+     * @param seed  The seed of the random words.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void writeBook(Path path, int words, long seed) throws IOException
+    {
+        Random random = new Random(seed);
+        int vocabulary = Math.max(1, words / 4);
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+        {
+            for (int i = 0; i < words; i++)
+            {
+                out.write("word");
+                out.write(Integer.toString(random.nextInt(vocabulary)));
+                out.write(i % 10 == 9 ? '\n' : ' ');
+            }
+        }
+    }
+
+    /**
+     * Creates probe words, half of them from a book's vocabulary and half never in any book.
+     *
+     * @param vocabulary The vocabulary size of the book.
+     * @return The probe words, present and absent ones alternating.
+     */
+    private static String[] probes(int vocabulary)
+    {
+        Random random = new Random(42);
+        String[] words = new String[PROBES];
+        for (int i = 0; i < PROBES; i++)
+        {
+            words[i] = (i % 2 == 0 ? "word" : "none") + random.nextInt(Math.max(1, vocabulary));
+        }
+        return words;
+    }
+
+    /**
+     * Finds a local port that is free right now.
+     */
+    private static int freePort() throws IOException
+    {
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * The position of a thread in the probe words, so that each call probes the next word.
+     */
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        private int next; // Number of the next call
+
+        int next()
+        {
+            return next++ & (PROBES - 1);
+        }
+    }
+
+    /**
+     * A Bloom filter sized for a number of words, and words to add and look up.
+     */
+    @State(Scope.Thread)
+    public static class BloomFilterState
+    {
+        @Param({"10000", "1000000"})
+        public int size; // Expected insertions of the filter
+
+        private String[] words; // Probe words
+        private BloomFilter filter; // Filter under measurement
+
+        @Setup
+        public void setUp()
+        {
+            words = probes(size);
+            filter = BloomFilter.create(size, 0.001);
+        }
+    }
+
+    /**
+     * A Bloom filter in MessageDigest compatibility mode.
+     */
+    @State(Scope.Thread)
+    public static class DigestState
+    {
+        private final String[] words = probes(10000); // Probe words
+        private final BloomFilter filter = new BloomFilter(1 << 20, "MD5", "SHA1"); // Filter under measurement
+    }
+
+    /**
+     * A CacheManager and skewed words over twice its size: a mix of hits, misses and evicting adds.
+     */
+    @State(Scope.Thread)
+    public static class CacheState
+    {
+        @Param({"LRU", "LFU"})
+        public String policy; // Replacement policy
+
+        @Param({"1000", "10000", "100000"})
+        public int size; // Cache size
+
+        private String[] words; // Probe words
+        private CacheManager cache; // Cache under measurement
+
+        @Setup
+        public void setUp()
+        {
+            Random random = new Random(7);
+            words = new String[PROBES];
+            for (int i = 0; i < PROBES; i++)
+            {
+                words[i] = "w" + (int) (2 * size * Math.pow(random.nextDouble(), 3));
+            }
+            cache = new CacheManager(size, "LRU".equals(policy) ? new LRU() : new LFU());
+        }
+    }
+
+    /**
+     * A full CacheManager to which every add brings a new word, so that each add evicts one word.
+     * Its words have mixed frequencies, a quarter of them queried once after being added.
+     */
+    @State(Scope.Thread)
+    public static class EvictionState
+    {
+        @Param({"LRU", "LFU"})
+        public String policy; // Replacement policy
+
+        @Param({"100", "1000", "10000", "100000", "1000000"})
+        public int capacity; // Cache size
+
+        private CacheManager cache; // Cache under measurement
+        private int next; // Number of the next new word
+
+        @Setup(Level.Iteration)
+        public void setUp()
+        {
+            cache = new CacheManager(capacity, "LRU".equals(policy) ? new LRU() : new LFU());
+            for (next = 0; next < capacity; next++)
+            {
+                String word = "w" + next;
+                cache.add(word);
+                if ((next & 3) == 0)
+                {
+                    cache.query(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * A generated book, with a Dictionary that indexes it and one that searches the file for challenges.
+     */
+    @State(Scope.Benchmark)
+    public static class BookState
+    {
+        @Param({"10000", "100000", "1000000"})
+        public int words; // Words in the book
+
+        private Path directory; // Temporary directory of the book
+        private Path book; // The book file
+        private String[] probes; // Probe words
+        private String[] absent; // Words in no book
+        private Dictionary indexed; // Dictionary answering challenges from its index
+        private Dictionary unindexed; // Dictionary answering challenges from the file
+
+        @Setup
+        public void setUp() throws IOException
+        {
+            directory = Files.createTempDirectory("books");
+            book = directory.resolve("book" + words + ".txt");
+            writeBook(book, words, words);
+            probes = probes(words / 4);
+            absent = new String[PROBES];
+            for (int i = 0; i < PROBES; i++)
+            {
+                absent[i] = "none" + i;
+            }
+            indexed = new Dictionary(true, book.toString());
+            unindexed = new Dictionary(false, book.toString());
+        }
+
+        @TearDown
+        public void tearDown() throws IOException
+        {
+            Files.deleteIfExists(book);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * A MyServer with a BookScrabbleHandler serving a book of 10000 words, in each execution mode.
+     * One server keeps connections alive for a client that reuses its connection; the other closes each connection
+     * after one request.
+     */
+    @State(Scope.Thread)
+    public static class ServerState
+    {
+        @Param({"INLINE", "THREAD_POOL"})
+        public String mode; // MyServer.ExecutionMode of the servers
+
+        private Path directory; // Temporary directory of the book
+        private Path book; // The book file
+        private String[] requests; // Q requests for the probe words
+        private MyServer keepAlive; // Server keeping connections alive
+        private MyServer perRequest; // Server closing each connection after one request
+        private int perRequestPort; // Port of perRequest
+        private Socket socket; // Connection to keepAlive
+        private PrintWriter out; // Requests to keepAlive
+        private BufferedReader in; // Answers of keepAlive
+
+        @Setup
+        public void setUp() throws IOException
+        {
+            directory = Files.createTempDirectory("books");
+            book = directory.resolve("book.txt");
+            writeBook(book, 10000, 10000);
+            String[] probes = probes(10000 / 4);
+            requests = new String[PROBES];
+            for (int i = 0; i < PROBES; i++)
+            {
+                requests[i] = "Q," + book + "," + probes[i];
+            }
+            MyServer.ExecutionMode executionMode = MyServer.ExecutionMode.valueOf(mode);
+
+            int port = freePort();
+            keepAlive = new MyServer(port, new BookScrabbleHandler(true), executionMode, MyServer.DEFAULT_MAX_CLIENTS);
+            keepAlive.start();
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            out = new PrintWriter(socket.getOutputStream());
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            perRequestPort = freePort();
+            perRequest = new MyServer(perRequestPort, new BookScrabbleHandler(), executionMode,
+                    MyServer.DEFAULT_MAX_CLIENTS);
+            perRequest.start();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException
+        {
+            socket.close();
+            keepAlive.close();
+            perRequest.close();
+            Files.deleteIfExists(book);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Benchmark
+    public void bloomFilterAdd(BloomFilterState state, Cursor cursor)
+    {
+        state.filter.add(state.words[cursor.next()]);
+    }
+
+    @Benchmark
+    public boolean bloomFilterContains(BloomFilterState state, Cursor cursor)
+    {
+        return state.filter.contains(state.words[cursor.next()]);
+    }
+
+    @Benchmark
+    public boolean bloomFilterContainsDigests(DigestState state, Cursor cursor)
+    {
+        return state.filter.contains(state.words[cursor.next()]);
+    }
+
+    @Benchmark
+    public boolean cacheManager(CacheState state, Cursor cursor)
+    {
+        String word = state.words[cursor.next()];
+        if (state.cache.query(word))
+        {
+            return true;
+        }
+        state.cache.add(word);
+        return false;
+    }
+
+    /**
+     * Adds a new word to a full cache. The time includes building the word, as a miss would.
+     */
+    @Benchmark
+    public void cacheManagerEviction(EvictionState state)
+    {
+        state.cache.add("w" + state.next++);
+    }
+
+    @Benchmark
+    public boolean dictionaryQuery(BookState state, Cursor cursor)
+    {
+        return state.indexed.query(state.probes[cursor.next()]);
+    }
+
+    /**
+     * Queries words that all fit in the caches, so that the warm queries are answered from the caches alone.
+     */
+    @Benchmark
+    public boolean dictionaryQueryCached(BookState state, Cursor cursor)
+    {
+        return state.indexed.query(state.probes[cursor.next() & (CACHED_PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean dictionaryChallengeIndexed(BookState state, Cursor cursor)
+    {
+        return state.indexed.challenge(state.probes[cursor.next()]);
+    }
+
+    @Benchmark
+    public boolean dictionaryChallengeFromFile(BookState state, Cursor cursor)
+    {
+        return state.unindexed.challenge(state.probes[cursor.next()]);
+    }
+
+    @Benchmark
+    public boolean ioSearcherSearchAbsent(BookState state, Cursor cursor)
+    {
+        return IOSearcher.search(state.absent[cursor.next()], state.book.toString());
+    }
+
+    @Benchmark
+    public String serverQueryKeptAlive(ServerState state, Cursor cursor) throws IOException
+    {
+        state.out.println(state.requests[cursor.next()]);
+        state.out.flush();
+        return state.in.readLine();
+    }
+
+    @Benchmark
+    public String serverQueryPerConnection(ServerState state, Cursor cursor) throws IOException
+    {
+        try (Socket socket = new Socket("localhost", state.perRequestPort);
+             PrintWriter out = new PrintWriter(socket.getOutputStream());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream())))
+        {
+            out.println(state.requests[cursor.next()]);
+            out.flush();
+            return in.readLine();
+        }
+    }
+}